@@ -7,13 +7,26 @@ import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -24,7 +37,12 @@ import java.security.Permission;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -54,6 +72,13 @@ public class GitletTests {
     static final Path NOTA = SRC.resolve("nota.txt");
     static final Path NOTB = SRC.resolve("notb.txt");
     static final Path NOTF = SRC.resolve("notf.txt");
+    static final Path LINES = SRC.resolve("lines.txt");
+    static final Path LINES1 = SRC.resolve("lines1.txt");
+    static final Path LINES2 = SRC.resolve("lines2.txt");
+    static final Path LINES12 = SRC.resolve("lines12.txt");
+    static final Path LINES3 = SRC.resolve("lines3.txt");
+    static final Path IGNORE1 = SRC.resolve("ignore1.txt");
+    static final Path IGNORE2 = SRC.resolve("ignore2.txt");
     static final String DATE = "Date: \\w\\w\\w \\w\\w\\w \\d+ \\d\\d:\\d\\d:\\d\\d \\d\\d\\d\\d [-+]\\d\\d\\d\\d";
     static final String COMMIT_HEAD = "commit ([a-f0-9]+)[ \\t]*\\n(?:Merge:\\s+[0-9a-f]{7}\\s+[0-9a-f]{7}[ ]*\\n)?" + DATE;
     static final String COMMIT_LOG = "(===[ ]*\\ncommit [a-f0-9]+[ ]*\\n(?:Merge:\\s+[0-9a-f]{7}\\s+[0-9a-f]{7}[ ]*\\n)?${DATE}[ ]*\\n(?:.|\\n)*?(?=\\Z|\\n===))"
@@ -276,6 +301,10 @@ public class GitletTests {
     public static void writeFile(Path src, String dst) {
         try {
             OG_OUT.println("Copy source file " + src + " to testing file " + dst);
+            Path parent = Path.of(dst).getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
             Files.copy(src, Path.of(dst), StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -1498,4 +1527,1131 @@ public class GitletTests {
         assertFileEquals(NOTF, "F.txt");
         assertFileEquals(G, "G.txt");
     }
+
+    @Test
+    public void test45_mergeDisjointHunks() {
+        i_prelude1();
+        writeFile(LINES, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Seven lines"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(LINES1, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change line two"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(LINES2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change line six"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "");
+        assertFileEquals(LINES12, "f.txt");
+        i_blankStatus2();
+    }
+
+    @Test
+    public void test46_diff() {
+        i_setup2();
+        writeFile(NOTWUG, "f.txt");
+        gitletCommand(new String[]{"diff"}, """
+                diff --git a/f.txt b/f.txt
+                --- a/f.txt
+                +++ b/f.txt
+                @@ -1 +1 @@
+                -This is a wug.
+                +This is not a wug.
+                """);
+        gitletCommand(new String[]{"diff", "--staged"}, "");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"diff"}, "");
+        gitletCommand(new String[]{"diff", "--staged", "--stat"}, """
+                 f.txt | 2 +-
+                 1 file changed, 1 insertion(+), 1 deletion(-)
+                """);
+        writeFile(NOTWUG, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"diff", "--staged", "--stat"}, """
+                 f.txt          | 2 +-
+                 g.txt => h.txt | 0\s
+                 2 files changed, 1 insertion(+), 1 deletion(-)
+                """);
+        gitletCommand(new String[]{"commit", "Copy g"}, "");
+        writeFile(LINES, "l.txt");
+        gitletCommand(new String[]{"add", "l.txt"}, "");
+        gitletCommand(new String[]{"commit", "Seven lines"}, "");
+        writeFile(LINES1, "l.txt");
+        writeFile(LINES1, "m.txt");
+        gitletCommand(new String[]{"add", "l.txt"}, "");
+        gitletCommand(new String[]{"add", "m.txt"}, "");
+        gitletCommand(new String[]{"diff", "--staged", "--stat"}, """
+                 l.txt          | 2 +-
+                 l.txt => m.txt | 2 +-
+                 2 files changed, 2 insertions(+), 2 deletions(-)
+                """);
+    }
+
+    @Test
+    public void test47_mergeAcrossRename() {
+        i_prelude1();
+        writeFile(LINES, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Seven lines"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(LINES1, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change line two"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        gitletCommand(new String[]{"rm", "f.txt"}, "");
+        writeFile(LINES, "g.txt");
+        gitletCommand(new String[]{"add", "g.txt"}, "");
+        gitletCommand(new String[]{"commit", "Rename f to g"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "");
+        assertFileEquals(LINES1, "g.txt");
+        assertFileDoesNotExist("f.txt");
+        i_blankStatus2();
+    }
+
+    @Test
+    public void test47_mergeConflictAcrossRename() {
+        i_prelude1();
+        writeFile(LINES, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Seven lines"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(LINES1, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change line two"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        gitletCommand(new String[]{"rm", "f.txt"}, "");
+        writeFile(LINES3, "g.txt");
+        gitletCommand(new String[]{"add", "g.txt"}, "");
+        gitletCommand(new String[]{"commit", "Rename f to g and number line two"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "Encountered a merge conflict.");
+        assertFileDoesNotExist("f.txt");
+        try {
+            assertTrue(Files.readString(Path.of("g.txt")).contains("<<<<<<<"));
+        } catch (IOException excp) {
+            fail(excp.getMessage());
+        }
+        gitletCommand(new String[]{"restore", "--", "g.txt"}, "");
+        assertFileEquals(LINES1, "g.txt");
+        gitletCommand(new String[]{"restore", "--", "f.txt"}, "File does not exist in that commit.");
+    }
+
+    @Test
+    public void test48_blame() {
+        i_prelude1();
+        writeFile(LINES, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Seven lines"}, "");
+        writeFile(WUG, "g.txt");
+        gitletCommand(new String[]{"add", "g.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add g"}, "");
+        writeFile(LINES1, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change line two"}, "");
+        String line = "([a-f0-9]{8}) \\(" + DATE.substring("Date: ".length()) + " %d\\) %s\n";
+        Matcher m = gitletCommandP(new String[]{"blame", "f.txt"},
+                String.format(line, 1, "one") + String.format(line, 2, "TWO")
+                + String.format(line, 3, "three") + String.format(line, 4, "four")
+                + String.format(line, 5, "five") + String.format(line, 6, "six")
+                + String.format(line, 7, "seven"));
+        assertFalse(m.group(1).equals(m.group(2)));
+        for (int i = 3; i <= 7; i++) {
+            assertEquals(m.group(1), m.group(i));
+        }
+        gitletCommand(new String[]{"blame", "h.txt"}, "File does not exist in that commit.");
+    }
+
+    @Test
+    public void test49_rebase() {
+        i_prelude1();
+        writeFile(LINES, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Seven lines"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(LINES1, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change line two"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(LINES2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change line six"}, "");
+        writeFile(WUG, "g.txt");
+        gitletCommand(new String[]{"add", "g.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add g"}, "");
+        gitletCommand(new String[]{"rebase", "main"}, "");
+        assertFileEquals(LINES12, "f.txt");
+        assertFileEquals(WUG, "g.txt");
+        gitletCommandP(new String[]{"log"}, """
+                ===
+                ${COMMIT_HEAD}
+                Add g
+
+                ===
+                ${COMMIT_HEAD}
+                Change line six
+
+                ===
+                ${COMMIT_HEAD}
+                Change line two
+
+                ===
+                ${COMMIT_HEAD}
+                Seven lines
+
+                ===
+                ${COMMIT_HEAD}
+                initial commit
+
+                """.replace("${COMMIT_HEAD}", COMMIT_HEAD));
+        gitletCommand(new String[]{"rebase", "main"}, "Already up-to-date.");
+        gitletCommand(new String[]{"cherry-pick", "abc123"}, "No commit with that id exists.");
+    }
+
+    @Test
+    public void test50_reuseResolution() {
+        i_prelude1();
+        writeFile(WUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add f"}, "");
+        gitletCommand(new String[]{"branch", "release"}, "");
+        gitletCommand(new String[]{"branch", "feature"}, "");
+        writeFile(NOTWUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Not a wug"}, "");
+        gitletCommand(new String[]{"switch", "release"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Another wug"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "release"}, "Encountered a merge conflict.");
+        writeFile(WUG3, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Resolve"}, "");
+        gitletCommand(new String[]{"switch", "feature"}, "");
+        writeFile(NOTWUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Not a wug"}, "");
+        gitletCommand(new String[]{"merge", "release"}, "Resolved 'f.txt' using previous resolution.");
+        assertFileEquals(WUG3, "f.txt");
+    }
+
+    @Test
+    public void test51_stash() {
+        i_setup2();
+        writeFile(NOTWUG, "f.txt");
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommandP(new String[]{"stash"},
+                "Saved working directory and index state WIP on main: [a-f0-9]{8} Two files");
+        assertFileEquals(WUG, "f.txt");
+        assertFileDoesNotExist("h.txt");
+        i_blankStatus();
+        gitletCommandP(new String[]{"stash", "list"}, "stash@\\{0}: WIP on main: [a-f0-9]{8} Two files");
+        gitletCommand(new String[]{"stash", "pop"}, "Dropped stash@{0}.");
+        assertFileEquals(NOTWUG, "f.txt");
+        assertFileEquals(WUG2, "h.txt");
+        gitletCommand(new String[]{"stash", "list"}, "");
+        gitletCommand(new String[]{"stash", "drop"}, "No stash entries found.");
+        gitletCommand(new String[]{"add", "."}, "");
+        gitletCommand(new String[]{"commit", "Change f, add h"}, "");
+
+        writeFile(WUG, "g.txt");
+        gitletCommandP(new String[]{"stash"},
+                "Saved working directory and index state WIP on main: [a-f0-9]{8} Change f, add h");
+        writeFile(WUG, "f.txt");
+        gitletCommand(new String[]{"stash", "pop"},
+                "Your local changes to f.txt would be overwritten; commit or restore them first.");
+        assertFileEquals(WUG, "f.txt");
+        assertFileEquals(NOTWUG, "g.txt");
+        writeFile(NOTWUG, "f.txt");
+        gitletCommand(new String[]{"stash", "pop"}, "Dropped stash@{0}.");
+        assertFileEquals(WUG, "g.txt");
+        writeFile(NOTWUG, "g.txt");
+
+        gitletCommand(new String[]{"rm", "f.txt"}, "");
+        writeFile(WUG3, "f.txt");
+        int commits = new File(".gitlet/commits").list().length;
+        gitletCommand(new String[]{"stash"},
+                "There is an untracked file in the way; delete it, or add and commit it first.");
+        assertEquals(commits, new File(".gitlet/commits").list().length);
+        assertFileEquals(WUG3, "f.txt");
+        gitletCommand(new String[]{"stash", "list"}, "");
+    }
+
+    /**
+     * Returns the average number of bytes the current thread allocates per
+     * call of the static method NAME of class gitlet.Utils or gitlet.ObjectId
+     * (CLASSNAME), whose parameter types are TYPES, called with ARGS.
+     * The method is called enough times first for the JIT to compile it.
+     */
+    public static long allocatedPerCall(String className, String name, Class<?>[] types,
+                                        Object... args) throws Exception {
+        Method method = Class.forName("gitlet." + className).getDeclaredMethod(name, types);
+        method.setAccessible(true);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int calls = 20000;
+        for (int i = 0; i < calls; i++) {
+            method.invoke(null, args);
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < calls; i++) {
+            method.invoke(null, args);
+        }
+        return (threads.getThreadAllocatedBytes(thread) - before) / calls;
+    }
+
+    @Test
+    public void test52_allocationBudgets() throws Exception {
+        byte[] digest = new byte[20];
+        long hex = allocatedPerCall("Utils", "toHex", new Class<?>[]{byte[].class}, digest);
+        assertTrue("toHex allocates " + hex + " bytes per call", hex <= 256);
+
+        long join = allocatedPerCall("Utils", "join", new Class<?>[]{File.class, String[].class},
+                new File("."), new String[]{"commits"});
+        assertTrue("join allocates " + join + " bytes per call", join <= 512);
+
+        File file = new File("alloc.txt");
+        long write = allocatedPerCall("Utils", "writeContents",
+                new Class<?>[]{File.class, Object[].class}, file, new Object[]{new byte[100]});
+        assertTrue("writeContents allocates " + write + " bytes per call", write <= 1024);
+
+        long sha1 = allocatedPerCall("Utils", "sha1", new Class<?>[]{Object[].class},
+                (Object) new Object[]{"some/file.txt", "\0", "ours"});
+        assertTrue("sha1 allocates " + sha1 + " bytes per call", sha1 <= 2048);
+
+        long id = allocatedPerCall("ObjectId", "fromHex", new Class<?>[]{String.class},
+                "0123456789abcdef0123456789abcdef01234567");
+        assertTrue("fromHex allocates " + id + " bytes per call", id <= 64);
+    }
+
+    @Test
+    public void test53_ignoreRules() {
+        i_prelude1();
+        writeFile(IGNORE1, ".gitletignore");
+        writeFile(IGNORE2, "sub/.gitletignore");
+        for (String name : new String[]{"a.log", "keep.log", "build/x.txt", "out/build",
+                "docs/c.tmp", "docs/a/b/c.tmp", "docs/c.txt", "sub/x.log", "sub/y.txt"}) {
+            writeFile(WUG, name);
+        }
+        gitletCommand(new String[]{"add", "."}, "");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                .gitletignore
+                docs/c.txt
+                keep.log
+                out/build
+                sub/.gitletignore
+                sub/x.log
+                sub/y.txt
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test54_ignoredFileInTheWay() {
+        i_prelude1();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(WUG, "a.log");
+        gitletCommand(new String[]{"add", "a.log"}, "");
+        gitletCommand(new String[]{"commit", "Add a.log"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        assertFileDoesNotExist("a.log");
+        writeFile(IGNORE1, ".gitletignore");
+        writeFile(NOTWUG, "a.log");
+        gitletCommand(new String[]{"switch", "other"},
+                "There is an untracked file in the way; delete it, or add and commit it first.");
+        gitletCommand(new String[]{"merge", "other"},
+                "There is an untracked file in the way; delete it, or add and commit it first.");
+        assertFileEquals(NOTWUG, "a.log");
+    }
+
+    @Test
+    public void test55_addAllWithoutWatcher() throws IOException {
+        i_setup2();
+        writeFile(NOTWUG, "f.txt");
+        deleteFile("g.txt");
+        writeFile(WUG2, "sub/h.txt");
+        Files.writeString(Path.of(".gitlet", "fsmonitor"), "stale-generation\nf.txt\n");
+        gitletCommand(new String[]{"add", "."}, "");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                f.txt
+                sub/h.txt
+
+                === Removed Files ===
+                g.txt
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+        gitletCommand(new String[]{"commit", "Changes"}, "");
+        writeFile(WUG, "sub/h.txt");
+        gitletCommand(new String[]{"add", "."}, "");
+        gitletCommand(new String[]{"diff", "--staged", "--stat"}, """
+                 sub/h.txt | 2 +-
+                 1 file changed, 1 insertion(+), 1 deletion(-)
+                """);
+    }
+
+    @Test
+    public void test56_sparseCheckout() {
+        i_prelude1();
+        writeFile(WUG, "a/x.txt");
+        writeFile(NOTWUG, "b/y.txt");
+        writeFile(WUG2, "top.md");
+        gitletCommand(new String[]{"add", "."}, "");
+        gitletCommand(new String[]{"commit", "Three files"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(NOTWUG, "a/x.txt");
+        writeFile(WUG3, "b/y.txt");
+        gitletCommand(new String[]{"add", "."}, "");
+        gitletCommand(new String[]{"commit", "Change both"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+
+        gitletCommand(new String[]{"sparse-checkout", "set", "a"}, "");
+        assertFileEquals(WUG, "a/x.txt");
+        assertFileDoesNotExist("b/y.txt");
+        assertFileDoesNotExist("b");
+        assertFileDoesNotExist("top.md");
+        gitletCommand(new String[]{"sparse-checkout", "add", "*.md"}, "");
+        assertFileEquals(WUG2, "top.md");
+        gitletCommand(new String[]{"sparse-checkout", "list"}, """
+                a
+                *.md
+                """);
+
+        writeFile(WUG, "b/y.txt");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        assertFileEquals(NOTWUG, "a/x.txt");
+        assertFileEquals(WUG, "b/y.txt");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        assertFileEquals(WUG, "a/x.txt");
+        assertFileEquals(WUG, "b/y.txt");
+
+        writeFile(WUG2, "a/x.txt");
+        gitletCommand(new String[]{"sparse-checkout", "set", "b"},
+                "Cannot remove modified file a/x.txt from the working tree; commit or restore it first.");
+        assertFileEquals(WUG2, "a/x.txt");
+        writeFile(WUG, "a/x.txt");
+
+        deleteFile("b/y.txt");
+        gitletCommand(new String[]{"sparse-checkout", "disable"}, "");
+        assertFileEquals(NOTWUG, "b/y.txt");
+        gitletCommand(new String[]{"sparse-checkout", "list"}, "");
+        i_blankStatus2();
+    }
+
+    /**
+     * Returns the gitlet.Fingerprint of DATA, in hexadecimal, given to it
+     * in pieces of at most PIECE bytes.
+     */
+    public static String fingerprint(byte[] data, int piece) throws Exception {
+        Class<?> fingerprint = Class.forName("gitlet.Fingerprint");
+        var constructor = fingerprint.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        Object result = constructor.newInstance();
+        Method update = fingerprint.getDeclaredMethod("update", byte[].class, int.class, int.class);
+        update.setAccessible(true);
+        Method value = fingerprint.getDeclaredMethod("value");
+        value.setAccessible(true);
+        for (int off = 0; off < data.length; off += piece) {
+            update.invoke(result, data, off, Math.min(piece, data.length - off));
+        }
+        return String.format("%016x", (long) value.invoke(result));
+    }
+
+    @Test
+    public void test57_hashAlgorithms() throws Exception {
+        gitletCommand(new String[]{"init", "--hash=md5"}, "Unknown hash algorithm: md5.");
+        assertFileDoesNotExist(".gitlet");
+        gitletCommand(new String[]{"init", "--hash=sha256"}, "");
+        writeFile(WUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "One file"}, "");
+        String[] commits = new File(".gitlet/commits").list();
+        assertEquals(2, commits.length);
+        for (String id : commits) {
+            assertTrue("commit id " + id + " is not SHA-256", id.matches("[0-9a-f]{64}"));
+        }
+        gitletCommand(new String[]{"config", "hash", "sha1"},
+                "The hash algorithm of a repository cannot be changed.");
+        writeFile(NOTWUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f"}, "");
+        writeFile(WUG, "f.txt");
+        gitletCommand(new String[]{"restore", "--", "f.txt"}, "");
+        assertFileEquals(NOTWUG, "f.txt");
+
+        assertEquals("ef46db3751d8e999", fingerprint(new byte[0], 1));
+        assertEquals("d24ec4f1a98c6e5b", fingerprint("a".getBytes(), 1));
+        assertEquals("44bc2cf5ad770999", fingerprint("abc".getBytes(), 1));
+        byte[] spam = "Nobody inspects the spammish repetition".getBytes();
+        assertEquals("fbcea83c8a378bf1", fingerprint(spam, spam.length));
+        assertEquals("fbcea83c8a378bf1", fingerprint(spam, 5));
+    }
+
+    /**
+     * Moves the repository in the current directory to DIR/.gitlet.
+     */
+    public static void moveRepository(String dir) throws IOException {
+        Files.createDirectories(Path.of(dir));
+        Files.move(Path.of(".gitlet"), Path.of(dir, ".gitlet"));
+    }
+
+    /**
+     * Moves the repository in DIR/.gitlet to the current directory.
+     */
+    public static void restoreRepository(String dir) throws IOException {
+        Files.move(Path.of(dir, ".gitlet"), Path.of(".gitlet"));
+    }
+
+    @Test
+    public void test58_fetchAndPush() throws IOException {
+        i_setup2();
+        moveRepository("remote");
+        deleteFile("f.txt");
+        deleteFile("g.txt");
+        i_prelude1();
+        gitletCommand(new String[]{"add-remote", "origin", "remote/.gitlet"}, "");
+        gitletCommand(new String[]{"fetch", "origin", "nobranch"},
+                "That remote does not have that branch.");
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        gitletCommand(new String[]{"fetch", "origin", "main"}, "");
+        assertFileDoesNotExist("f.txt");
+        gitletCommand(new String[]{"merge", "origin/main"}, "");
+        assertFileEquals(WUG, "f.txt");
+        assertFileEquals(NOTWUG, "g.txt");
+        gitletCommand(new String[]{"push", "origin", "main"}, "");
+        assertEquals(4, new File("remote/.gitlet/commits").list().length);
+
+        moveRepository("local");
+        restoreRepository("remote");
+        writeFile(WUG3, "i.txt");
+        gitletCommand(new String[]{"add", "i.txt"}, "");
+        gitletCommand(new String[]{"commit", "Remote change"}, "");
+        moveRepository("remote");
+        restoreRepository("local");
+        deleteFile("i.txt");
+
+        writeFile(NOTWUG, "j.txt");
+        gitletCommand(new String[]{"add", "j.txt"}, "");
+        gitletCommand(new String[]{"commit", "Local change"}, "");
+        gitletCommand(new String[]{"push", "origin", "main"},
+                "Please pull down remote changes before pushing.");
+        assertEquals(5, new File("remote/.gitlet/commits").list().length);
+        gitletCommand(new String[]{"pull", "origin", "main"}, "");
+        assertFileEquals(WUG3, "i.txt");
+        gitletCommand(new String[]{"push", "origin", "main"}, "");
+        assertEquals(7, new File("remote/.gitlet/commits").list().length);
+    }
+
+    /**
+     * Makes a repository with a branch main of three commits and a branch
+     * other that leaves it after the second, and moves it to DIR/.gitlet.
+     */
+    public static void i_sourceRepository(String dir) throws IOException {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(NOTWUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        moveRepository(dir);
+        deleteFile("f.txt");
+        deleteFile("g.txt");
+    }
+
+    @Test
+    public void test59_shallowClone() throws Exception {
+        i_sourceRepository("source");
+        gitletCommand(new String[]{"clone", "source", "--depth", "1"}, "");
+        assertFileEquals(NOTWUG, "f.txt");
+        assertFileEquals(NOTWUG, "g.txt");
+        assertEquals(2, new File(".gitlet/commits").list().length);
+        try (var in = new java.io.ObjectInputStream(Files.newInputStream(Path.of(".gitlet", "shallow")))) {
+            assertEquals(2, ((java.util.Set<?>) in.readObject()).size());
+        }
+        gitletCommand(new String[]{"merge", "other"},
+                "Given branch shares no history with the current branch.");
+        gitletCommand(new String[]{"rebase", "other"},
+                "Given branch shares no history with the current branch.");
+        assertFileDoesNotExist("h.txt");
+    }
+
+    @Test
+    public void test60_partialClone() throws Exception {
+        i_sourceRepository("source");
+        gitletCommand(new String[]{"clone", "source", "--filter=blob:none"}, "");
+        assertFileEquals(NOTWUG, "f.txt");
+        assertFileDoesNotExist(".gitlet/shallow");
+        Files.move(Path.of("source"), Path.of("elsewhere"));
+        gitletCommandP(new String[]{"switch", "other"},
+                "Cannot fetch missing blobs: promisor repository .*source.* is unavailable.");
+        assertFileEquals(NOTWUG, "f.txt");
+        assertFileDoesNotExist("h.txt");
+        Files.move(Path.of("elsewhere"), Path.of("source"));
+        gitletCommand(new String[]{"switch", "other"}, "");
+        assertFileEquals(WUG, "f.txt");
+        assertFileEquals(WUG2, "h.txt");
+    }
+
+    /**
+     * Returns the next line of IN without its newline, or null at the end
+     * of the stream.
+     */
+    public static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                return line.size() == 0 ? null : line.toString(StandardCharsets.UTF_8);
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sends the request LINE to a gitlet server on OUT, followed by an
+     * empty pack if PACK, and returns the first line of the response.
+     */
+    public static String serverRequest(InputStream in, OutputStream out, String line,
+                                       boolean pack) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        if (pack) {
+            data.writeInt(0x474c504b);
+            data.writeInt(1);
+            data.writeInt(0);
+        }
+        data.flush();
+        return readLine(in);
+    }
+
+    /**
+     * Connects to the gitlet server listening on SOCKET.  The server may
+     * still be starting up: its socket file appears when it binds, a
+     * moment before it listens, so refused connections are retried for
+     * up to five seconds.
+     */
+    public static SocketChannel connect(Path socket) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            try {
+                return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+            } catch (IOException excp) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw excp;
+                }
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    @Test
+    public void test61_hostServer() throws Exception {
+        i_sourceRepository("hosted/proj");
+        Path socketDir = Files.createTempDirectory("gitlet");
+        Path socket = socketDir.resolve("server.sock");
+        Thread server = new Thread(() -> {
+            try {
+                gitlet.Main.main(new String[]{"serve", socket.toString(), "hosted", "4", "2"});
+            } catch (SecurityException ignored) {
+                // Main exits once the server is interrupted.
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        try {
+            SocketChannel a = connect(socket);
+            InputStream aIn = Channels.newInputStream(a);
+            OutputStream aOut = Channels.newOutputStream(a);
+            assertEquals("ok 2", serverRequest(aIn, aOut, "branches proj", false));
+            String[] main = readLine(aIn).split(" ");
+            String[] other = readLine(aIn).split(" ");
+            assertEquals("main", main[0]);
+            assertEquals("other", other[0]);
+
+            try (SocketChannel b = connect(socket)) {
+                InputStream bIn = Channels.newInputStream(b);
+                assertEquals("ok 3", serverRequest(bIn, Channels.newOutputStream(b),
+                        "log proj main", false));
+                assertEquals(main[1] + " Change f", readLine(bIn));
+                String split = readLine(bIn).split(" ")[0];
+                readLine(bIn);
+                try (SocketChannel c = connect(socket)) {
+                    InputStream cIn = Channels.newInputStream(c);
+                    assertEquals("error busy", readLine(cIn));
+                    assertEquals(null, readLine(cIn));
+                }
+
+                assertEquals("error Please pull down remote changes before pushing.",
+                        serverRequest(aIn, aOut, "push proj main " + main[1] + " " + other[1], true));
+                assertEquals("ok Sent 0 commits and 0 blobs (0 bytes).",
+                        serverRequest(aIn, aOut, "push proj newb - " + split, true));
+                assertEquals("ok Sent 0 commits and 0 blobs (0 bytes).",
+                        serverRequest(aIn, aOut, "push proj newb " + split + " " + other[1], true));
+                assertEquals("ok 3", serverRequest(aIn, aOut, "branches proj", false));
+                assertEquals("main " + main[1], readLine(aIn));
+                assertEquals("newb " + other[1], readLine(aIn));
+                assertEquals("other " + other[1], readLine(aIn));
+            }
+
+            DataOutputStream truncated = new DataOutputStream(aOut);
+            truncated.write(("push proj main " + main[1] + " " + other[1] + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            truncated.writeInt(0x474c504b);
+            truncated.flush();
+            a.close();
+
+            String stats = "";
+            for (int i = 0; i < 250 && !stats.contains("dropped=1"); i++) {
+                Thread.sleep(20);
+                try (SocketChannel d = connect(socket)) {
+                    InputStream dIn = Channels.newInputStream(d);
+                    String header = serverRequest(dIn, Channels.newOutputStream(d), "stats", false);
+                    stats = "";
+                    for (int n = Integer.parseInt(header.substring(3)); n > 0; n--) {
+                        stats += readLine(dIn) + "\n";
+                    }
+                }
+            }
+            assertTrue(stats, stats.matches(
+                    "server connections=1 active=1 waiting=0 rejected=1 dropped=1\n"
+                    + "proj requests=7 errors=2 [^\n]*\n"));
+        } finally {
+            server.interrupt();
+            server.join(5000);
+            getOutput();
+            Files.deleteIfExists(socket);
+            Files.deleteIfExists(socketDir);
+        }
+    }
+
+    /** Returns LENGTH bytes of pseudo-random data, the same for every SEED. */
+    public static byte[] randomBytes(long seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void test62_chunkedStorage() throws IOException {
+        i_prelude1();
+        gitletCommand(new String[]{"config", "chunking", "true"}, "");
+        byte[] data = randomBytes(62, 1024 * 1024);
+        Files.write(Path.of("big.bin"), data);
+        gitletCommand(new String[]{"add", "big.bin"}, "");
+        gitletCommand(new String[]{"commit", "Add big file"}, "");
+        data[data.length / 2] ^= 1;
+        Files.write(Path.of("big.bin"), data);
+        gitletCommand(new String[]{"add", "big.bin"}, "");
+        gitletCommand(new String[]{"commit", "Change one byte"}, "");
+        Matcher m = gitletCommandP(new String[]{"count-objects"}, """
+                blobs: 2 \\(2 chunked\\)
+                chunks: (\\d+)
+                size: 2097152
+                stored: (\\d+)
+                dedup ratio: (1\\.\\d\\d)
+                """);
+        long stored = Long.parseLong(m.group(2));
+        assertTrue(stored > 1024 * 1024);
+        assertTrue(stored < 1024 * 1024 + 4 * 64 * 1024);
+
+        Files.write(Path.of("copy.bin"), data);
+        gitletCommand(new String[]{"add", "copy.bin"}, "");
+        gitletCommand(new String[]{"count-objects"}, "blobs: 2 (2 chunked)\n"
+                + "chunks: " + m.group(1) + "\nsize: 2097152\nstored: " + stored + "\n"
+                + "dedup ratio: " + m.group(3));
+        File[] scratch = new File(".gitlet/tmp").listFiles();
+        assertTrue(scratch == null || scratch.length == 0);
+
+        Files.write(Path.of("big.bin"), randomBytes(63, 1000));
+        gitletCommand(new String[]{"restore", "--", "big.bin"}, "");
+        assertTrue(Arrays.equals(data, Files.readAllBytes(Path.of("big.bin"))));
+    }
+
+    @Test
+    public void test63_checkoutRollback() throws IOException {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(NOTWUG, "f.txt");
+        writeFile(WUG2, "sub/h.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"add", "sub/h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f and add sub/h"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        assertFileDoesNotExist("sub");
+        writeFile(WUG3, "sub");
+        gitletCommand(new String[]{"switch", "other"}, "Could not write sub/h.txt.");
+        assertFileEquals(WUG, "f.txt");
+        assertFileEquals(NOTWUG, "g.txt");
+        assertFileEquals(WUG3, "sub");
+        assertEquals(0, new File(".gitlet/tmp").list().length);
+        deleteFile("sub");
+        i_blankStatus2();
+    }
+
+    @Test
+    public void test64_incrementalCheckout() {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(NOTWUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f"}, "");
+        File shared = new File("g.txt");
+        long mtime = 946684800000L;
+        assertTrue(shared.setLastModified(mtime));
+        gitletCommand(new String[]{"switch", "main"}, "");
+        assertFileEquals(WUG, "f.txt");
+        assertEquals(mtime, shared.lastModified());
+        gitletCommand(new String[]{"switch", "other"}, "");
+        assertFileEquals(NOTWUG, "f.txt");
+        assertEquals(mtime, shared.lastModified());
+        assertFileEquals(NOTWUG, "g.txt");
+        i_blankStatus2();
+    }
+
+    /** Makes COUNT commits on the current branch, alternating the contents
+     *  of FILENAME between FIRST and SECOND and starting with SECOND. */
+    public static void i_commits(String filename, Path first, Path second, int count) {
+        for (int i = 1; i <= count; i++) {
+            writeFile(i % 2 == 0 ? first : second, filename);
+            gitletCommand(new String[]{"add", filename}, "");
+            gitletCommand(new String[]{"commit", "Change " + filename + " " + i}, "");
+        }
+    }
+
+    @Test
+    public void test65_longHistory() {
+        i_prelude1();
+        writeFile(WUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add f"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        i_commits("f.txt", WUG, NOTWUG, 40);
+        gitletCommand(new String[]{"merge", "other"},
+                "Given branch is an ancestor of the current branch.");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        i_commits("h.txt", WUG2, WUG3, 20);
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "");
+        assertFileEquals(WUG, "f.txt");
+        assertFileEquals(WUG2, "h.txt");
+        i_commits("f.txt", WUG, NOTWUG, 20);
+        gitletCommand(new String[]{"merge", "other"},
+                "Given branch is an ancestor of the current branch.");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        gitletCommand(new String[]{"merge", "main"}, "Current branch fast-forwarded.");
+        assertFileEquals(WUG, "f.txt");
+        assertFileEquals(WUG2, "h.txt");
+    }
+
+    @Test
+    public void test66_parallelMerge() {
+        i_prelude1();
+        for (int i = 0; i < 20; i++) {
+            writeFile(LINES, "f" + i + ".txt");
+            gitletCommand(new String[]{"add", "f" + i + ".txt"}, "");
+        }
+        gitletCommand(new String[]{"commit", "Twenty files"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        for (int i = 0; i < 20; i++) {
+            writeFile(i == 0 ? LINES3 : LINES1, "f" + i + ".txt");
+            gitletCommand(new String[]{"add", "f" + i + ".txt"}, "");
+        }
+        gitletCommand(new String[]{"commit", "Change line two"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        for (int i = 0; i < 20; i++) {
+            writeFile(i == 0 ? LINES1 : LINES2, "f" + i + ".txt");
+            gitletCommand(new String[]{"add", "f" + i + ".txt"}, "");
+        }
+        gitletCommand(new String[]{"commit", "Change line six"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "Encountered a merge conflict.");
+        for (int i = 1; i < 20; i++) {
+            assertFileEquals(LINES12, "f" + i + ".txt");
+        }
+        try {
+            assertTrue(Files.readString(Path.of("f0.txt")).contains("<<<<<<<"));
+        } catch (IOException excp) {
+            fail(excp.getMessage());
+        }
+        gitletCommand(new String[]{"restore", "--", "f0.txt"}, "");
+        assertFileEquals(LINES3, "f0.txt");
+        i_blankStatus2();
+    }
+
+    /** Returns LINES numbered lines of text, with the lines numbered in
+     *  CHANGED marked as changed. */
+    public static byte[] largeText(int lines, int... changed) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append(Arrays.binarySearch(changed, i) >= 0 ? "changed " : "line ")
+                    .append(i).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Adds, commits, merges and restores a file of several MiB, chunked
+     *  if CHUNKED, and checks the contents at each step. */
+    public static void i_largeFileRoundTrip(boolean chunked) throws IOException {
+        i_prelude1();
+        gitletCommand(new String[]{"config", "chunking", String.valueOf(chunked)}, "");
+        int lines = 400000;
+        Path big = Path.of("big.txt");
+        Files.write(big, largeText(lines));
+        assertTrue(Files.size(big) > 4 * 1024 * 1024);
+        gitletCommand(new String[]{"add", "big.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add big file"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        Files.write(big, largeText(lines, 10));
+        gitletCommand(new String[]{"add", "big.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change the start"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        assertTrue(Arrays.equals(largeText(lines), Files.readAllBytes(big)));
+        Files.write(big, largeText(lines, lines - 10));
+        gitletCommand(new String[]{"add", "big.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change the end"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "");
+        byte[] merged = largeText(lines, 10, lines - 10);
+        assertTrue(Arrays.equals(merged, Files.readAllBytes(big)));
+        Files.write(big, largeText(10));
+        gitletCommand(new String[]{"restore", "--", "big.txt"}, "");
+        assertTrue(Arrays.equals(merged, Files.readAllBytes(big)));
+        gitletCommandP(new String[]{"count-objects"}, "blobs: 4 \\(" + (chunked ? 4 : 0)
+                + " chunked\\)\n" + ARBLINES);
+        i_blankStatus2();
+    }
+
+    @Test
+    public void test67_largeFile() throws IOException {
+        i_largeFileRoundTrip(false);
+    }
+
+    @Test
+    public void test68_largeChunkedFile() throws IOException {
+        i_largeFileRoundTrip(true);
+    }
+
+    /** Calls method NAME, taking arguments of TYPES, of the gitlet class
+     *  CLASSNAME on TARGET, or statically if TARGET is null, with ARGS.
+     *  Rethrows what the method throws. */
+    public static Object call(String className, Object target, String name,
+                              Class<?>[] types, Object... args) throws Exception {
+        Method method = Class.forName("gitlet." + className).getDeclaredMethod(name, types);
+        method.setAccessible(true);
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException excp) {
+            throw (Exception) excp.getCause();
+        }
+    }
+
+    /** Returns the gitlet ObjectId written as HEX. */
+    public static Object objectId(String hex) throws Exception {
+        return call("ObjectId", null, "fromHex", new Class<?>[]{String.class}, hex);
+    }
+
+    /** Returns HEXDIGITS random lower-case hexadecimal digits. */
+    public static String randomHex(Random random, int hexDigits) {
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < hexDigits; i++) {
+            hex.append("0123456789abcdef".charAt(random.nextInt(16)));
+        }
+        return hex.toString();
+    }
+
+    @Test
+    public void test69_objectIds() throws Exception {
+        Random random = new Random(69);
+        List<String> hexes = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            hexes.add(randomHex(random, i % 2 == 0 ? 40 : 64));
+        }
+        hexes.add("ffffffffffffffffffffffffffffffffffffffff");
+        hexes.add("0000000000000000000000000000000000000000");
+        hexes.add(hexes.get(1).substring(0, 40));
+        hexes.add("8" + hexes.get(0).substring(1));
+        hexes.add("7" + hexes.get(0).substring(1));
+
+        List<Comparable<Object>> ids = new ArrayList<>();
+        for (String hex : hexes) {
+            @SuppressWarnings("unchecked")
+            Comparable<Object> id = (Comparable<Object>) objectId(hex);
+            assertEquals(hex, id.toString());
+            assertEquals(id, objectId(hex.toUpperCase()));
+            assertEquals(id.hashCode(), objectId(hex).hashCode());
+            byte[] bytes = (byte[]) call("ObjectId", id, "toBytes", new Class<?>[0]);
+            assertEquals(hex.length() / 2, bytes.length);
+            assertEquals(id, call("ObjectId", null, "fromBytes",
+                    new Class<?>[]{byte[].class, int.class, int.class}, bytes, 0, bytes.length));
+            ids.add(id);
+        }
+        ids.sort(null);
+        List<String> sorted = new ArrayList<>(hexes);
+        sorted.sort(null);
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(sorted.get(i), ids.get(i).toString());
+        }
+        assertFalse(objectId(hexes.get(1).substring(0, 40)).equals(objectId(hexes.get(1))));
+
+        String valid = hexes.get(0);
+        for (String bad : new String[]{"", valid.substring(1), valid + "0",
+                                       valid.substring(1) + "g", valid.substring(1) + "-",
+                                       valid.substring(1) + "\u0660", valid.substring(1) + "\uff10",
+                                       valid.substring(1) + "\uff41"}) {
+            try {
+                objectId(bad);
+                fail("accepted " + bad);
+            } catch (IllegalArgumentException excp) {
+                assertTrue(excp.getMessage().startsWith("not an object id"));
+            }
+        }
+    }
+
+    /** Returns a gitlet Tree holding the files in FILES, a map from file
+     *  name to blob id, added in order of their UTF-8 bytes. */
+    public static Object tree(Map<String, String> files) throws Exception {
+        var constructor = Class.forName("gitlet.Tree$Builder").getDeclaredConstructor();
+        constructor.setAccessible(true);
+        Object builder = constructor.newInstance();
+        Class<?> objectIdClass = Class.forName("gitlet.ObjectId");
+        for (String name : new TreeSet<>(files.keySet())) {
+            call("Tree$Builder", builder, "add", new Class<?>[]{String.class, objectIdClass},
+                    name, objectId(files.get(name)));
+        }
+        return call("Tree$Builder", builder, "build", new Class<?>[0]);
+    }
+
+    @Test
+    public void test70_trees() throws Exception {
+        Random random = new Random(70);
+        HashMap<String, String> files = new HashMap<>();
+        for (int i = 0; i < 70; i++) {
+            files.put(String.format("dir%d/file%03d.txt", i % 3, i), randomHex(random, 40));
+        }
+        files.put("a", randomHex(random, 40));
+        files.put("dir0/file000.txt.orig", randomHex(random, 40));
+        files.put("zz/" + "long".repeat(100) + ".txt", randomHex(random, 40));
+        List<String> names = new ArrayList<>(new TreeSet<>(files.keySet()));
+        assertTrue(names.size() > 4 * 16);
+
+        Object tree = tree(files);
+        assertEquals(names.size(), call("Tree", tree, "size", new Class<?>[0]));
+        assertEquals(names, call("Tree", tree, "names", new Class<?>[0]));
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            ids.add(files.get(name));
+            assertEquals(i, call("Tree", tree, "indexOf", new Class<?>[]{String.class}, name));
+            assertEquals(files.get(name), call("Tree", tree, "get", new Class<?>[]{String.class}, name));
+        }
+        assertEquals(ids, call("Tree", tree, "blobIds", new Class<?>[0]));
+        assertEquals(files, call("Tree", tree, "toMap", new Class<?>[0]));
+        for (String missing : new String[]{"", "0", "b", "dir1", "dir1/file000.txt",
+                                           "dir0/file000.txt.orig2", "zzz", "long".repeat(200)}) {
+            assertEquals(null, call("Tree", tree, "get", new Class<?>[]{String.class}, missing));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(tree);
+        }
+        Object copy;
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = in.readObject();
+        }
+        assertEquals(names, call("Tree", copy, "names", new Class<?>[0]));
+        assertEquals(files, call("Tree", copy, "toMap", new Class<?>[0]));
+
+        HashMap<String, String> added = new HashMap<>();
+        added.put("dir1/file001.txt", randomHex(random, 40));
+        added.put("dir1/file001.txt.new", randomHex(random, 40));
+        Set<String> removed = Set.of("dir2/file050.txt", "a");
+        Object changed = call("Tree", tree, "with", new Class<?>[]{Map.class, Set.class},
+                added, removed);
+        files.putAll(added);
+        files.keySet().removeAll(removed);
+        assertEquals(files, call("Tree", changed, "toMap", new Class<?>[0]));
+        assertEquals(new ArrayList<>(new TreeSet<>(files.keySet())),
+                call("Tree", changed, "names", new Class<?>[0]));
+    }
+
+    /** Checks that the status shows STAGED, file names each followed by
+     *  a newline, as the only staged files. */
+    public static void i_stagedStatus(String staged) {
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                """ + staged + """
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test71_untrackedCache() {
+        i_prelude1();
+        File sub = new File("sub");
+        writeFile(WUG, "sub/a.txt");
+        gitletCommand(new String[]{"add", "."}, "");
+        long listed = sub.lastModified();
+        writeFile(WUG2, "sub/b.txt");
+        assertTrue(sub.setLastModified(listed));
+        gitletCommand(new String[]{"add", "."}, "");
+        i_stagedStatus("sub/a.txt\nsub/b.txt\n");
+
+        long old = System.currentTimeMillis() - 60000;
+        assertTrue(sub.setLastModified(old));
+        gitletCommand(new String[]{"add", "."}, "");
+        writeFile(WUG3, "sub/c.txt");
+        assertTrue(sub.setLastModified(old));
+        gitletCommand(new String[]{"add", "."}, "");
+        i_stagedStatus("sub/a.txt\nsub/b.txt\n");
+
+        assertTrue(sub.setLastModified(old + 1000));
+        gitletCommand(new String[]{"add", "."}, "");
+        i_stagedStatus("sub/a.txt\nsub/b.txt\nsub/c.txt\n");
+    }
 }
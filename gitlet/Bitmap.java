@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/** A compressed, immutable set of commit-graph positions.
+ *
+ *  Positions are kept as sorted, disjoint runs [start, end), the same idea
+ *  as the run containers of a Roaring bitmap.  Commit-graph positions are
+ *  handed out parents-first, so the ancestry of a commit is usually a few
+ *  long runs, and the set operations below walk runs rather than bits.
+ */
+class Bitmap implements Serializable {
+
+    /** Run boundaries: start0, end0, start1, end1, ... */
+    private final int[] runs;
+
+    private Bitmap(int[] runs) {
+        this.runs = runs;
+    }
+
+    /** The empty set. */
+    static Bitmap empty() {
+        return new Bitmap(new int[0]);
+    }
+
+    /** Returns the set containing exactly the positions set in BITS. */
+    static Bitmap of(BitSet bits) {
+        Builder result = new Builder();
+        int start = bits.nextSetBit(0);
+        while (start >= 0) {
+            int end = bits.nextClearBit(start);
+            result.addRun(start, end);
+            start = bits.nextSetBit(end);
+        }
+        return result.build();
+    }
+
+    /** Returns true iff POSITION is in this set. */
+    boolean contains(int position) {
+        int lo = 0;
+        int hi = runs.length / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (position < runs[2 * mid]) {
+                hi = mid - 1;
+            } else if (position >= runs[2 * mid + 1]) {
+                lo = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the number of positions in this set. */
+    int cardinality() {
+        int count = 0;
+        for (int i = 0; i < runs.length; i += 2) {
+            count += runs[i + 1] - runs[i];
+        }
+        return count;
+    }
+
+    /** Returns the positions in this set in increasing order. */
+    int[] toArray() {
+        int[] result = new int[cardinality()];
+        int k = 0;
+        for (int i = 0; i < runs.length; i += 2) {
+            for (int p = runs[i]; p < runs[i + 1]; p++) {
+                result[k++] = p;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the union of this set and OTHER. */
+    Bitmap or(Bitmap other) {
+        Builder result = new Builder();
+        int i = 0;
+        int j = 0;
+        while (i < runs.length || j < other.runs.length) {
+            if (j >= other.runs.length
+                    || (i < runs.length && runs[i] <= other.runs[j])) {
+                result.addRun(runs[i], runs[i + 1]);
+                i += 2;
+            } else {
+                result.addRun(other.runs[j], other.runs[j + 1]);
+                j += 2;
+            }
+        }
+        return result.build();
+    }
+
+
+    /** Returns the positions of this set that are not in OTHER. */
+    Bitmap andNot(Bitmap other) {
+        Builder result = new Builder();
+        int j = 0;
+        for (int i = 0; i < runs.length; i += 2) {
+            int start = runs[i];
+            int end = runs[i + 1];
+            while (j < other.runs.length && other.runs[j + 1] <= start) {
+                j += 2;
+            }
+            int k = j;
+            while (start < end && k < other.runs.length && other.runs[k] < end) {
+                if (other.runs[k] > start) {
+                    result.addRun(start, other.runs[k]);
+                }
+                start = Math.max(start, other.runs[k + 1]);
+                k += 2;
+            }
+            if (start < end) {
+                result.addRun(start, end);
+            }
+        }
+        return result.build();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Bitmap && Arrays.equals(runs, ((Bitmap) obj).runs);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(runs);
+    }
+
+    /** Accumulates runs given in nondecreasing order of start, merging
+     *  runs that touch or overlap. */
+    private static class Builder {
+        private int[] runs = new int[8];
+        private int size;
+
+        void addRun(int start, int end) {
+            if (size > 0 && start <= runs[size - 1]) {
+                runs[size - 1] = Math.max(runs[size - 1], end);
+                return;
+            }
+            if (size == runs.length) {
+                runs = Arrays.copyOf(runs, 2 * size);
+            }
+            runs[size++] = start;
+            runs[size++] = end;
+        }
+
+        Bitmap build() {
+            return new Bitmap(Arrays.copyOf(runs, size));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Set;
+
+/** Finds, for each line of a file, the commit that last changed it.
+ *
+ *  History is walked back along first parents, but only the commits where
+ *  the file's blob id changes are looked at; the file is never read for a
+ *  commit that left it alone.  The versions found are then diffed oldest
+ *  first, each carrying the origins of its unchanged lines forward.  The
+ *  origins computed for each (commit, file) pair are kept in
+ *  .gitlet/blame-cache, so the walk stops at the first one already known
+ *  and a blame after new commits only diffs the new versions.
+ */
+class Blame {
+
+    private final BlobStore blobs;
+    private final File cacheDir;
+    private final Set<String> shallow;
+
+    Blame(File gitletDir, BlobStore blobs) {
+        this.blobs = blobs;
+        this.cacheDir = Utils.join(gitletDir, "blame-cache");
+        this.shallow = Utils.shallowCommits(gitletDir);
+    }
+
+    /** The commits that last changed each line of a version of a file. */
+    static class Origins implements Serializable {
+        /** The distinct commits, in order of first appearance. */
+        private final ArrayList<String> commits = new ArrayList<>();
+        /** lines[i] indexes the commit that last changed line i. */
+        private final int[] lines;
+
+        Origins(int size) {
+            lines = new int[size];
+        }
+
+        /** Returns the number of lines. */
+        int size() {
+            return lines.length;
+        }
+
+        /** Returns the id of the commit that last changed line I. */
+        String commit(int i) {
+            return commits.get(lines[i]);
+        }
+
+        private int indexOf(String commit) {
+            int index = commits.indexOf(commit);
+            if (index < 0) {
+                commits.add(commit);
+                index = commits.size() - 1;
+            }
+            return index;
+        }
+    }
+
+    /** Returns the origins of the lines of FILENAME as of commit COMMITID,
+     *  which must track it. */
+    Origins blame(String commitId, String filename) {
+        Deque<Commit> changes = new ArrayDeque<>();
+        Origins known = null;
+        Commit curr = Utils.getCommit(commitId);
+        String blobId = curr.getBlobId(filename);
+        while (true) {
+            Commit parent = shallow.contains(curr.getHash()) ? null
+                    : Utils.getCommit(curr.getParent());
+            String parentBlobId = parent == null ? null : parent.getBlobId(filename);
+            if (!blobId.equals(parentBlobId)) {
+                known = readCache(curr.getHash(), filename);
+                if (known != null) {
+                    break;
+                }
+                changes.push(curr);
+                if (parentBlobId == null) {
+                    break;
+                }
+                blobId = parentBlobId;
+            }
+            curr = parent;
+        }
+        Lines before = known == null ? null : read(curr.getBlobId(filename));
+        while (!changes.isEmpty()) {
+            Commit change = changes.pop();
+            Lines after = read(change.getBlobId(filename));
+            known = carry(before, known, after, change.getHash());
+            writeCache(change.getHash(), filename, known);
+            before = after;
+        }
+        return known;
+    }
+
+    /** Returns the origins of the lines of AFTER, the version of a file
+     *  written by commit COMMITID, given those of BEFORE, the version it
+     *  replaced.  BEFORE and ORIGINS are null if there was none. */
+    private static Origins carry(Lines before, Origins origins, Lines after, String commitId) {
+        Origins result = new Origins(after.size());
+        int changed = result.indexOf(commitId);
+        if (before == null) {
+            return result;
+        }
+        int[] kept = new int[origins.commits.size()];
+        Arrays.fill(kept, -1);
+        int a = 0;
+        int b = 0;
+        for (Diff.Hunk hunk : Diff.compute(before, after)) {
+            for (; b < hunk.bStart; a++, b++) {
+                result.lines[b] = keep(result, origins, a, kept);
+            }
+            for (; b < hunk.bEnd; b++) {
+                result.lines[b] = changed;
+            }
+            a = hunk.aEnd;
+        }
+        for (; b < after.size(); a++, b++) {
+            result.lines[b] = keep(result, origins, a, kept);
+        }
+        return result;
+    }
+
+    /** Returns the index in RESULT of the commit that last changed line
+     *  A of ORIGINS, where KEPT maps indices in ORIGINS to those in RESULT
+     *  as far as they are known yet. */
+    private static int keep(Origins result, Origins origins, int a, int[] kept) {
+        int index = origins.lines[a];
+        if (kept[index] < 0) {
+            kept[index] = result.indexOf(origins.commits.get(index));
+        }
+        return kept[index];
+    }
+
+    /** Returns the lines of blob ID. */
+    Lines read(String id) {
+        try (InputStream in = blobs.open(id)) {
+            return Lines.read(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    private File cacheFile(String commitId, String filename) {
+        return Utils.join(cacheDir, Utils.sha1(commitId, "\0", filename));
+    }
+
+    private Origins readCache(String commitId, String filename) {
+        File file = cacheFile(commitId, filename);
+        return file.isFile() ? Utils.readObject(file, Origins.class) : null;
+    }
+
+    private void writeCache(String commitId, String filename, Origins origins) {
+        cacheDir.mkdir();
+        Utils.writeObject(cacheFile(commitId, filename), origins);
+    }
+}
@@ -0,0 +1,420 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** The file contents saved in a repository, each named by the hash of
+ *  its contents under the repository's HashAlgorithm.
+ *
+ *  A blob is normally a single file in .gitlet/blobs.  When chunking is
+ *  on, a blob of at least CHUNK_THRESHOLD bytes is instead cut into
+ *  content-defined chunks, each stored once in .gitlet/chunks, and
+ *  .gitlet/chunked holds the list of chunks that make it up.  Either way
+ *  the blob's id is the hash of its whole contents, so commits cannot
+ *  tell the two apart.
+ *
+ *  A partial clone names a promisor repository in its config, holding
+ *  the blobs it was cloned without.  A blob missing here is copied from
+ *  there when first read; callers about to read many blobs prefetch them
+ *  in one batch instead.
+ */
+class BlobStore {
+
+    /** Smallest blob that is chunked when chunking is on. */
+    static final int CHUNK_THRESHOLD = 256 * 1024;
+
+    /** Size of the buffer used to copy file contents. */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File blobDir;
+    private final File chunkDir;
+    private final File chunkedDir;
+    private final File tempDir;
+    private final File configFile;
+    private final File gitletDir;
+    private boolean chunking;
+    private BlobStore promisor;
+    private HashAlgorithm algorithm;
+
+    /** A store for the repository whose .gitlet directory is GITLETDIR. */
+    BlobStore(File gitletDir) {
+        this.gitletDir = gitletDir;
+        configFile = Utils.join(gitletDir, "config");
+        blobDir = Utils.join(gitletDir, "blobs");
+        chunkDir = Utils.join(gitletDir, "chunks");
+        chunkedDir = Utils.join(gitletDir, "chunked");
+        tempDir = Utils.join(gitletDir, "tmp");
+    }
+
+    /** Returns the hash function naming the blobs of this store. */
+    HashAlgorithm algorithm() {
+        if (algorithm == null) {
+            algorithm = HashAlgorithm.of(gitletDir);
+        }
+        return algorithm;
+    }
+
+    /** Turns chunking of newly written large blobs on or off. */
+    void setChunking(boolean chunking) {
+        this.chunking = chunking;
+    }
+
+    /** Returns true iff blob ID is in this store. */
+    boolean contains(String id) {
+        return Utils.join(blobDir, id).isFile() || Utils.join(chunkedDir, id).isFile();
+    }
+
+    /** Returns the length in bytes of the contents of blob ID. */
+    long size(String id) {
+        File plain = Utils.join(blobDir, id);
+        if (plain.isFile()) {
+            return plain.length();
+        } else if (fetchMissing(id)) {
+            return size(id);
+        }
+        return readChunkList(id).size;
+    }
+
+    /** Saves CONTENTS and returns its id. */
+    String write(byte[] contents) {
+        String id = algorithm().hash(contents);
+        if (contains(id)) {
+            return id;
+        }
+        if (!chunking || contents.length < CHUNK_THRESHOLD) {
+            try {
+                install(Utils.join(blobDir, id), contents, 0, contents.length);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+            return id;
+        }
+        return writeChunked(new ByteArrayInputStream(contents), contents.length);
+    }
+
+    /** Saves the contents of FILE and returns its id. */
+    String write(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return write(in, file.length());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Saves everything remaining in IN, SIZE bytes in all, and returns
+     *  its id.  IN is read once, through a buffer of fixed size, however
+     *  long it is. */
+    String write(InputStream in, long size) {
+        try {
+            if (chunking && size >= CHUNK_THRESHOLD) {
+                return writeChunked(in, size);
+            }
+            MessageDigest md = algorithm().digest();
+            File temp = newTempFile();
+            try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                    md.update(buf, 0, n);
+                    out.write(buf, 0, n);
+                }
+            }
+            String id = Utils.toHex(md.digest());
+            if (contains(id)) {
+                temp.delete();
+            } else {
+                moveInto(temp, Utils.join(blobDir, id));
+            }
+            return id;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Saves the SIZE bytes of IN as a chunked blob and returns its id.
+     *  At most two maximum-size chunks are held in memory at a time.  The
+     *  chunks and the chunk list are each written whole or not at all, so
+     *  one left behind by an interrupted write is never trusted. */
+    private String writeChunked(InputStream in, long size) {
+        try {
+            Chunker chunker = new Chunker();
+            MessageDigest whole = algorithm().digest();
+            MessageDigest part = algorithm().newDigest();
+            ChunkList list = new ChunkList(size);
+            byte[] buf = new byte[2 * Chunker.MAX_SIZE];
+            int len = 0;
+            boolean eof = false;
+            while (true) {
+                while (!eof && len < buf.length) {
+                    int n = in.read(buf, len, buf.length - len);
+                    if (n < 0) {
+                        eof = true;
+                    } else {
+                        len += n;
+                    }
+                }
+                if (len == 0) {
+                    break;
+                }
+                int cut = chunker.nextBoundary(buf, 0, len);
+                whole.update(buf, 0, cut);
+                part.update(buf, 0, cut);
+                String chunkId = Utils.toHex(part.digest());
+                File chunkFile = Utils.join(chunkDir, chunkId);
+                if (!chunkFile.exists()) {
+                    install(chunkFile, buf, 0, cut);
+                }
+                list.chunks.add(chunkId);
+                System.arraycopy(buf, cut, buf, 0, len - cut);
+                len -= cut;
+            }
+            String id = Utils.toHex(whole.digest());
+            if (!contains(id)) {
+                byte[] listBytes = Utils.serialize(list);
+                install(Utils.join(chunkedDir, id), listBytes, 0, listBytes.length);
+            }
+            return id;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns a stream over the contents of blob ID.  A chunked blob is
+     *  read one chunk at a time. */
+    InputStream open(String id) {
+        try {
+            File plain = Utils.join(blobDir, id);
+            if (plain.isFile()) {
+                return new FileInputStream(plain);
+            } else if (fetchMissing(id)) {
+                return open(id);
+            }
+            Iterator<String> chunks = readChunkList(id).chunks.iterator();
+            return new SequenceInputStream(new Enumeration<InputStream>() {
+                @Override
+                public boolean hasMoreElements() {
+                    return chunks.hasNext();
+                }
+
+                @Override
+                public InputStream nextElement() {
+                    try {
+                        return new FileInputStream(Utils.join(chunkDir, chunks.next()));
+                    } catch (IOException excp) {
+                        throw new IllegalArgumentException(excp);
+                    }
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the contents of blob ID.  Only for blobs known to be small;
+     *  use copyTo or transferTo otherwise. */
+    byte[] read(String id) {
+        try (InputStream in = open(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Writes the contents of blob ID to FILE, creating or overwriting it. */
+    void copyTo(String id, File file) {
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            transferTo(id, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Writes the contents of blob ID to OUT, letting the file system
+     *  move the bytes where it can. */
+    void transferTo(String id, WritableByteChannel out) {
+        File plain = Utils.join(blobDir, id);
+        if (plain.isFile()) {
+            transferFile(plain, out);
+            return;
+        } else if (fetchMissing(id)) {
+            transferTo(id, out);
+            return;
+        }
+        for (String chunkId : readChunkList(id).chunks) {
+            transferFile(Utils.join(chunkDir, chunkId), out);
+        }
+    }
+
+    /** Copies those of blobs IDS that are missing here from the promisor
+     *  repository, if there is one, all at once. */
+    void prefetch(Collection<String> ids) {
+        Set<String> missing = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (id != null && !contains(id)) {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty() || promisor() == null) {
+            return;
+        }
+        for (String id : missing) {
+            if (!promisor.contains(id)) {
+                throw Utils.error("Blob %s is missing here and from the promisor repository.", id);
+            }
+            try (InputStream in = promisor.open(id)) {
+                if (!write(in, promisor.size(id)).equals(id)) {
+                    throw Utils.error("Blob %s from the promisor repository is corrupt.", id);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+    }
+
+    /** Copies blob ID from the promisor repository if it is missing here
+     *  and there is one.  Returns true iff it was copied. */
+    private boolean fetchMissing(String id) {
+        if (contains(id) || promisor() == null) {
+            return false;
+        }
+        prefetch(List.of(id));
+        return true;
+    }
+
+    /** Returns the store of the promisor repository, or null if this is
+     *  not a partial clone.  Throws a GitletException if the promisor
+     *  cannot be found. */
+    private BlobStore promisor() {
+        if (promisor == null && configFile.isFile()) {
+            HashMap<String, String> config = Utils.readObject(configFile, HashMap.class);
+            String path = config.get("promisor");
+            if (path == null) {
+                return null;
+            }
+            File promisorDir = new File(path);
+            if (!Utils.join(promisorDir, "branches").isFile()) {
+                throw Utils.error("%s", "Cannot fetch missing blobs: promisor repository "
+                        + path + " is unavailable.");
+            }
+            promisor = new BlobStore(promisorDir);
+        }
+        return promisor;
+    }
+
+    private static void transferFile(File file, WritableByteChannel out) {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            for (long pos = 0; pos < size;) {
+                pos += in.transferTo(pos, size - pos, out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    private ChunkList readChunkList(String id) {
+        File listFile = Utils.join(chunkedDir, id);
+        if (!listFile.isFile()) {
+            throw Utils.error("Blob %s is missing.", id);
+        }
+        return Utils.readObject(listFile, ChunkList.class);
+    }
+
+    /** Writes the LEN bytes of BUF starting at START to FILE, unless FILE
+     *  already exists.  Readers see either no FILE or all of it. */
+    private void install(File file, byte[] buf, int start, int len) throws IOException {
+        File temp = newTempFile();
+        try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+            out.write(buf, start, len);
+        }
+        moveInto(temp, file);
+    }
+
+    /** Renames scratch file TEMP to FILE in one step, or deletes TEMP if
+     *  FILE already exists; its name says what it holds, so it already
+     *  holds the same bytes. */
+    private void moveInto(File temp, File file) throws IOException {
+        if (file.exists()) {
+            temp.delete();
+            return;
+        }
+        file.getParentFile().mkdirs();
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Returns a new, empty file in the scratch directory of this store. */
+    private File newTempFile() throws IOException {
+        tempDir.mkdirs();
+        return Files.createTempFile(tempDir.toPath(), "blob", null).toFile();
+    }
+
+    /** Returns a report of how much space chunking saves: the number of
+     *  blobs and chunks, the total size of all blobs, and the number of
+     *  bytes actually stored for them. */
+    List<String> dedupReport() {
+        long blobs = 0;
+        long chunkedBlobs = 0;
+        long logical = 0;
+        long stored = 0;
+        for (String id : listOrEmpty(blobDir)) {
+            long size = Utils.join(blobDir, id).length();
+            blobs++;
+            logical += size;
+            stored += size;
+        }
+        for (String id : listOrEmpty(chunkedDir)) {
+            File listFile = Utils.join(chunkedDir, id);
+            blobs++;
+            chunkedBlobs++;
+            logical += readChunkList(id).size;
+            stored += listFile.length();
+        }
+        List<String> chunks = listOrEmpty(chunkDir);
+        for (String id : chunks) {
+            stored += Utils.join(chunkDir, id).length();
+        }
+        List<String> report = new ArrayList<>();
+        report.add(String.format("blobs: %d (%d chunked)", blobs, chunkedBlobs));
+        report.add(String.format("chunks: %d", chunks.size()));
+        report.add(String.format("size: %d", logical));
+        report.add(String.format("stored: %d", stored));
+        report.add(String.format("dedup ratio: %.2f", stored == 0 ? 1.0 : (double) logical / stored));
+        return report;
+    }
+
+    private static List<String> listOrEmpty(File dir) {
+        List<String> names = Utils.plainFilenamesIn(dir);
+        return names == null ? Collections.emptyList() : names;
+    }
+
+    /** The chunks of one chunked blob, in order. */
+    private static class ChunkList implements Serializable {
+        private final long size;
+        private final ArrayList<String> chunks = new ArrayList<>();
+
+        ChunkList(long size) {
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/** Brings the working tree from the files of one commit to those of another.
+ *
+ *  Only paths whose blob id differs between the two trees are written or
+ *  deleted.  A path whose blob is the same in both is left alone as long
+ *  as its working copy still holds that blob, which the stat cache can
+ *  usually confirm without reading the file.
+ *
+ *  Changes are queued and then carried out by run.  Every check is made
+ *  before any file is touched.  Blobs are then copied to scratch files in
+ *  parallel, and only once all copies have succeeded are they renamed
+ *  into place and the deletions made.  The files they replace are set
+ *  aside until every rename has succeeded, so that a failure at any point
+ *  before the deletions leaves the working tree as it was.
+ */
+class Checkout {
+
+    /** Fewest writes worth handing to a thread pool. */
+    static final int PARALLEL_THRESHOLD = 8;
+    /** Most threads used to write files. */
+    static final int MAX_THREADS = 16;
+
+    private final File workTree;
+    private final File tempDir;
+    private final BlobStore blobs;
+    private final StatCache stats;
+    private final TreeMap<String, String> writes = new TreeMap<>();
+    private final TreeSet<String> deletes = new TreeSet<>();
+
+    Checkout(File workTree, BlobStore blobs, StatCache stats) {
+        this.workTree = workTree;
+        this.tempDir = Utils.join(workTree, ".gitlet", "tmp");
+        this.blobs = blobs;
+        this.stats = stats;
+    }
+
+    /** Updates the working tree from the files of FROM to those of TO, both
+     *  maps from file name to blob id.  Throws a GitletException, having
+     *  changed nothing, if this would overwrite a file that FROM does not
+     *  track. */
+    void apply(Map<String, String> from, Map<String, String> to) {
+        check(from, to);
+        for (Map.Entry<String, String> entry : to.entrySet()) {
+            String filename = entry.getKey();
+            String blobId = entry.getValue();
+            File file = Utils.join(workTree, filename);
+            if (blobId.equals(from.get(filename)) && stats.isClean(filename, file, blobId)) {
+                continue;
+            }
+            write(filename, blobId);
+        }
+        for (String filename : from.keySet()) {
+            if (!to.containsKey(filename)) {
+                delete(filename);
+            }
+        }
+        run();
+    }
+
+    /** Throws a GitletException if updating the working tree from FROM to
+     *  TO, as apply does, would overwrite a file that FROM does not
+     *  track, so that callers can check before changing anything else. */
+    void check(Map<String, String> from, Map<String, String> to) {
+        for (String filename : to.keySet()) {
+            if (!from.containsKey(filename) && Utils.join(workTree, filename).isFile()) {
+                throw Utils.error("There is an untracked file in the way;"
+                        + " delete it, or add and commit it first.");
+            }
+        }
+    }
+
+    /** Queues writing blob BLOBID to the working-tree file FILENAME. */
+    void write(String filename, String blobId) {
+        deletes.remove(filename);
+        writes.put(filename, blobId);
+    }
+
+    /** Queues deleting the working-tree file FILENAME. */
+    void delete(String filename) {
+        writes.remove(filename);
+        deletes.add(filename);
+    }
+
+    /** Carries out every queued write and deletion.  If any blob cannot
+     *  be copied, throws a GitletException listing each failure in file
+     *  name order and leaves the working tree untouched; the same goes if
+     *  a copy cannot be moved into place.  In a partial clone, the blobs
+     *  not fetched yet are fetched first, in one batch. */
+    void run() {
+        blobs.prefetch(writes.values());
+        Map<String, File> copies = copyAll();
+        moveAll(copies);
+        for (String filename : copies.keySet()) {
+            stats.record(filename, Utils.join(workTree, filename), writes.get(filename));
+        }
+        for (String filename : deletes) {
+            remove(Utils.join(workTree, filename));
+            stats.forget(filename);
+        }
+        writes.clear();
+        deletes.clear();
+    }
+
+    /** Renames each of COPIES, scratch files by file name, into place.
+     *  The files they replace are kept in the scratch directory until all
+     *  are in place, and if any rename fails, those made so far are undone
+     *  and a GitletException is thrown. */
+    private void moveAll(Map<String, File> copies) {
+        List<String> moved = new ArrayList<>();
+        TreeMap<String, File> replaced = new TreeMap<>();
+        String filename = null;
+        try {
+            for (Map.Entry<String, File> entry : copies.entrySet()) {
+                filename = entry.getKey();
+                File file = Utils.join(workTree, filename);
+                Files.createDirectories(file.getParentFile().toPath());
+                if (file.isFile()) {
+                    File old = new File(entry.getValue().getPath() + ".old");
+                    Files.move(file.toPath(), old.toPath());
+                    replaced.put(filename, old);
+                }
+                Files.move(entry.getValue().toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                moved.add(filename);
+            }
+        } catch (IOException excp) {
+            for (int i = moved.size() - 1; i >= 0; i--) {
+                remove(Utils.join(workTree, moved.get(i)));
+            }
+            for (Map.Entry<String, File> entry : replaced.entrySet()) {
+                File file = Utils.join(workTree, entry.getKey());
+                file.getParentFile().mkdirs();
+                entry.getValue().renameTo(file);
+            }
+            for (File copy : copies.values()) {
+                copy.delete();
+            }
+            throw Utils.error("Could not write %s.", filename);
+        }
+        for (File old : replaced.values()) {
+            old.delete();
+        }
+    }
+
+    /** Deletes FILE, and then each directory above it, short of the
+     *  working tree, that this leaves empty. */
+    private void remove(File file) {
+        if (file.isDirectory() || !file.delete()) {
+            return;
+        }
+        for (File dir = file.getParentFile(); !dir.equals(workTree) && dir.delete(); ) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Copies every queued blob to a scratch file, returning the scratch
+     *  file for each file name, in order. */
+    private Map<String, File> copyAll() {
+        TreeMap<String, File> copies = new TreeMap<>();
+        List<String> errors = new ArrayList<>();
+        if (writes.size() < PARALLEL_THRESHOLD) {
+            for (Map.Entry<String, String> entry : writes.entrySet()) {
+                try {
+                    copies.put(entry.getKey(), copy(entry.getValue()));
+                } catch (RuntimeException excp) {
+                    errors.add(failure(entry.getKey(), excp));
+                }
+            }
+        } else {
+            int threads = Math.min(MAX_THREADS, Math.min(writes.size(),
+                    2 * Runtime.getRuntime().availableProcessors()));
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                TreeMap<String, Future<File>> pending = new TreeMap<>();
+                for (Map.Entry<String, String> entry : writes.entrySet()) {
+                    try {
+                        pending.put(entry.getKey(),
+                                pool.submit(() -> copy(entry.getValue())));
+                    } catch (RejectedExecutionException excp) {
+                        errors.add(failure(entry.getKey(), excp));
+                    }
+                }
+                for (Map.Entry<String, Future<File>> entry : pending.entrySet()) {
+                    try {
+                        copies.put(entry.getKey(), entry.getValue().get());
+                    } catch (ExecutionException excp) {
+                        errors.add(failure(entry.getKey(), excp.getCause()));
+                    } catch (InterruptedException excp) {
+                        Thread.currentThread().interrupt();
+                        errors.add(failure(entry.getKey(), excp));
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+        if (!errors.isEmpty()) {
+            for (File copy : copies.values()) {
+                copy.delete();
+            }
+            throw Utils.error("%s", String.join("\n", errors));
+        }
+        return copies;
+    }
+
+    /** Copies blob BLOBID to a new scratch file. */
+    private File copy(String blobId) {
+        try {
+            tempDir.mkdirs();
+            File temp = File.createTempFile("checkout", null, tempDir);
+            try {
+                blobs.copyTo(blobId, temp);
+            } catch (RuntimeException excp) {
+                temp.delete();
+                throw excp;
+            }
+            return temp;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    private static String failure(String filename, Throwable excp) {
+        return String.format("Could not write %s: %s", filename, excp.getMessage());
+    }
+}
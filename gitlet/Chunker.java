@@ -0,0 +1,64 @@
+package gitlet;
+
+import java.util.Random;
+
+/** Finds content-defined chunk boundaries with the FastCDC gear hash.
+ *
+ *  A boundary is placed where the rolling hash of the last few dozen bytes
+ *  matches a mask, so inserting or appending bytes only moves the
+ *  boundaries near the edit and every other chunk keeps its hash.  As in
+ *  FastCDC, a stricter mask is used before the average chunk size and a
+ *  looser one after it, which keeps chunk sizes close to the average.
+ */
+class Chunker {
+
+    /** No chunk except the last one of a file is shorter than this. */
+    static final int MIN_SIZE = 2 * 1024;
+    /** The chunk size that boundaries are normalized towards. */
+    static final int AVG_SIZE = 8 * 1024;
+    /** No chunk is longer than this. */
+    static final int MAX_SIZE = 64 * 1024;
+
+    /** 15 one bits, used below AVG_SIZE. */
+    private static final long MASK_SMALL = 0xfffe000000000000L;
+    /** 11 one bits, used from AVG_SIZE on. */
+    private static final long MASK_LARGE = 0xffe0000000000000L;
+
+    /** A fixed pseudo-random value for each byte, so that boundaries are
+     *  the same in every repository. */
+    private final long[] gear = new long[256];
+
+    Chunker() {
+        Random random = new Random(0x6769746c6574L);
+        for (int i = 0; i < gear.length; i++) {
+            gear[i] = random.nextLong();
+        }
+    }
+
+    /** Returns the length of the chunk that starts at BUF[OFF], looking at
+     *  no more than LEN bytes.  Unless LEN is at least MAX_SIZE, the caller
+     *  must have reached the end of its input, since the boundary may lie
+     *  beyond the bytes it was given. */
+    int nextBoundary(byte[] buf, int off, int len) {
+        if (len <= MIN_SIZE) {
+            return len;
+        }
+        int limit = Math.min(len, MAX_SIZE);
+        int normal = Math.min(limit, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + gear[buf[off + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i++) {
+            hash = (hash << 1) + gear[buf[off + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
@@ -1,6 +1,7 @@
 package gitlet;
 import java.io.File;
 import java.util.HashMap;
+import java.util.List;
 import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -18,40 +19,47 @@ public class Commit implements Serializable {
 
     private final String message;
     private final String timestamp;
-    private final String parent; // SHA1 ID OF PARENT
-    private String secondParent;
-    private final String hash;
-    private HashMap<String, String> tracking; // filename: blobhash
+    private final ObjectId parent; // SHA1 ID OF PARENT
+    private ObjectId secondParent;
+    private final ObjectId hash;
+    private final Tree tracking; // filename: blobhash
     private final Date date;
 
+    // Makes a commit whose id is computed with algorithm, the hash
+    // function of the repository it goes in
     public Commit(String message, String parent, HashMap<String, String> added,
-                  HashMap<String, String> removed, String secondParent) {
+                  HashMap<String, String> removed, String secondParent,
+                  HashAlgorithm algorithm) {
+        Tree base;
         if (parent != null) {
             date = new Date();
-            this.tracking = Utils.getCommit(parent).getTracking();
+            base = Utils.getCommit(parent).tracking;
         } else {
             date = new Date(0);
-            this.tracking = new HashMap<>();
+            base = Tree.empty();
         }
+        this.tracking = base.with(added, removed.keySet());
 
         SimpleDateFormat sdf = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
         sdf.setTimeZone(TimeZone.getTimeZone("GMT-08:00"));
         timestamp = sdf.format(date);
 
         this.message = message;
-        this.parent = parent;
-        this.secondParent = secondParent;
+        this.parent = ObjectId.fromHexOrNull(parent);
+        this.secondParent = ObjectId.fromHexOrNull(secondParent);
 
-        for (String filename : added.keySet()) {
-            String blobHash = added.get(filename);
-            this.tracking.put(filename, blobHash);
-        }
-
-        for (String filename : removed.keySet()) {
-            this.tracking.remove(filename);
-        }
+        hash = algorithm.hashId(Utils.serialize(this));
+    }
 
-        hash = Utils.sha1(Utils.serialize(this));
+    // Makes a copy of other without its id, as it was when hashed
+    private Commit(Commit other) {
+        message = other.message;
+        timestamp = other.timestamp;
+        parent = other.parent;
+        secondParent = other.secondParent;
+        hash = null;
+        tracking = other.tracking;
+        date = other.date;
     }
 
     public String getMessage() {
@@ -63,36 +71,75 @@ public class Commit implements Serializable {
     }
 
     public String getParent() {
-        return parent;
+        return ObjectId.toHexOrNull(parent);
     }
 
     public String getHash() {
+        return hash.toHex();
+    }
+
+    // Returns the id of this commit, as an ObjectId
+    ObjectId id() {
         return hash;
     }
 
+    // Returns the id algorithm gives the contents of this commit, worked
+    // out afresh rather than taken from the id it was stored with
+    ObjectId computeId(HashAlgorithm algorithm) {
+        return algorithm.hashId(Utils.serialize(new Commit(this)));
+    }
+
+    // Returns the id of the first parent, or null for the initial commit
+    ObjectId parentId() {
+        return parent;
+    }
+
+    // Returns the id of the second parent, or null if this is no merge
+    ObjectId secondParentId() {
+        return secondParent;
+    }
+
     public boolean containsFile(String filename) {
-        return tracking.containsKey(filename);
+        return tracking.contains(filename);
     }
 
-    // Returns byte array of file in current commit
-    public byte[] getFile(String filename) {
-        if (tracking.containsKey(filename)) {
-            return Utils.readContents(Utils.join(BLOB_DIR, tracking.get(filename)));
+    // Returns byte array of file in current commit, read from blobs
+    public byte[] getFile(BlobStore blobs, String filename) {
+        String blobId = tracking.get(filename);
+        if (blobId != null) {
+            return blobs.read(blobId);
         } else {
             return new byte[0];
         }
     }
 
+    // Returns the id of the blob tracked for filename, or null if untracked
+    public String getBlobId(String filename) {
+        return tracking.get(filename);
+    }
+
+    // Returns a new map from each tracked filename to its blob id;
+    // changing it leaves the commit alone
     public HashMap<String, String> getTracking() {
-        return tracking;
+        return tracking.toMap();
+    }
+
+    // Returns the tracked filenames, in order
+    List<String> fileNames() {
+        return tracking.names();
+    }
+
+    // Returns the ids of the tracked blobs, one per tracked file
+    List<String> blobIds() {
+        return tracking.blobIds();
     }
 
     public void setSecondParent(String secondParent) {
-        this.secondParent = secondParent;
+        this.secondParent = ObjectId.fromHexOrNull(secondParent);
     }
 
     public String getSecondParent() {
-        return secondParent;
+        return ObjectId.toHexOrNull(secondParent);
     }
 
 }
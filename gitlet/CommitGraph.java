@@ -0,0 +1,285 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+/** A numbering of the commits of a repository, kept in .gitlet/commit-graph.
+ *
+ *  Every commit gets a position, and a commit's parents always have smaller
+ *  positions than the commit itself.  Parent links are stored as positions,
+ *  so walks over the graph never deserialize commits.  Some commits also
+ *  carry a Bitmap of every position reachable from them; no commit is more
+ *  than BITMAP_INTERVAL steps from one that does, so reachability questions
+ *  reduce to a short walk followed by bitmap operations.
+ */
+class CommitGraph implements Serializable {
+
+    /** Largest number of steps from any commit to one with a stored bitmap. */
+    static final int BITMAP_INTERVAL = 16;
+
+    /** Marks a missing parent. */
+    static final int NONE = -1;
+
+    private final ArrayList<ObjectId> ids = new ArrayList<>();
+    private final HashMap<ObjectId, Integer> positions = new HashMap<>();
+    private int[] firstParents = new int[16];
+    private int[] secondParents = new int[16];
+    /** Number of steps from each commit to the nearest stored bitmap. */
+    private int[] distances = new int[16];
+    private final HashMap<Integer, Bitmap> bitmaps = new HashMap<>();
+
+    private transient File gitletDir;
+    private transient Set<ObjectId> shallow;
+    private transient boolean dirty;
+
+    /** Returns the commit graph of the repository in GITLETDIR, or a new
+     *  empty one if none has been written yet or the one written cannot
+     *  be read. */
+    static CommitGraph load(File gitletDir) {
+        File file = Utils.join(gitletDir, "commit-graph");
+        CommitGraph graph = null;
+        if (file.isFile()) {
+            try {
+                graph = Utils.readObject(file, CommitGraph.class);
+            } catch (IllegalArgumentException excp) {
+                graph = null;
+            }
+        }
+        if (graph == null) {
+            graph = new CommitGraph();
+            graph.dirty = true;
+        }
+        graph.gitletDir = gitletDir;
+        graph.shallow = new HashSet<>();
+        for (String id : Utils.shallowCommits(gitletDir)) {
+            graph.shallow.add(ObjectId.fromHex(id));
+        }
+        return graph;
+    }
+
+    /** Writes this graph back to its repository if it has changed. */
+    void save() {
+        if (dirty) {
+            Utils.writeObject(Utils.join(gitletDir, "commit-graph"), this);
+            dirty = false;
+        }
+    }
+
+    /** Returns the number of commits in this graph. */
+    int size() {
+        return ids.size();
+    }
+
+    /** Returns the id of the commit at POSITION. */
+    String id(int position) {
+        return ids.get(position).toHex();
+    }
+
+    /** Returns the position of commit ID, first adding it and any of its
+     *  ancestors that are not in the graph yet.  Commits on the boundary
+     *  of a shallow clone are added without parents. */
+    int position(String id) {
+        return position(ObjectId.fromHex(id));
+    }
+
+    /** Returns the position of commit ID, as for position(String). */
+    int position(ObjectId id) {
+        Integer known = positions.get(id);
+        if (known != null) {
+            return known;
+        }
+        Deque<ObjectId> pending = new ArrayDeque<>();
+        pending.push(id);
+        while (!pending.isEmpty()) {
+            ObjectId top = pending.peek();
+            if (positions.containsKey(top)) {
+                pending.pop();
+                continue;
+            }
+            Commit commit = readCommit(top.toHex());
+            boolean root = shallow.contains(top);
+            ObjectId first = root ? null : commit.parentId();
+            ObjectId second = root ? null : commit.secondParentId();
+            if (first != null && !positions.containsKey(first)) {
+                pending.push(first);
+            } else if (second != null && !positions.containsKey(second)) {
+                pending.push(second);
+            } else {
+                pending.pop();
+                append(top, first == null ? NONE : positions.get(first),
+                        second == null ? NONE : positions.get(second));
+            }
+        }
+        return positions.get(id);
+    }
+
+    /** Returns the first parent of the commit at POSITION, or NONE. */
+    int firstParent(int position) {
+        return firstParents[position];
+    }
+
+    /** Returns the second parent of the commit at POSITION, or NONE. */
+    int secondParent(int position) {
+        return secondParents[position];
+    }
+
+    /** Returns the positions of every commit reachable from commit ID,
+     *  including ID itself. */
+    Bitmap reachable(String id) {
+        return reachable(position(id));
+    }
+
+    /** Returns the positions of every commit reachable from POSITION. */
+    Bitmap reachable(int position) {
+        Bitmap stored = bitmaps.get(position);
+        if (stored != null) {
+            return stored;
+        }
+        Bitmap result = Bitmap.empty();
+        BitSet walked = new BitSet();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(position);
+        while (!stack.isEmpty()) {
+            int p = stack.pop();
+            if (walked.get(p) || result.contains(p)) {
+                continue;
+            }
+            stored = bitmaps.get(p);
+            if (stored != null) {
+                result = result.or(stored);
+                continue;
+            }
+            walked.set(p);
+            if (firstParents[p] != NONE) {
+                stack.push(firstParents[p]);
+            }
+            if (secondParents[p] != NONE) {
+                stack.push(secondParents[p]);
+            }
+        }
+        return result.or(Bitmap.of(walked));
+    }
+
+    /** Returns true iff commit ANCESTOR is reachable from commit
+     *  DESCENDANT.  A commit is its own ancestor. */
+    boolean isAncestor(String ancestor, String descendant) {
+        int a = position(ancestor);
+        int d = position(descendant);
+        return a <= d && reachable(d).contains(a);
+    }
+
+
+
+    /** Returns the commits reachable from commit WANT but from none of
+     *  HAVES, parents before children. */
+    List<String> missing(String want, Collection<String> haves) {
+        Bitmap exclude = Bitmap.empty();
+        for (String have : haves) {
+            exclude = exclude.or(reachable(have));
+        }
+        List<String> result = new ArrayList<>();
+        for (int p : reachable(want).andNot(exclude).toArray()) {
+            result.add(ids.get(p).toHex());
+        }
+        return result;
+    }
+
+    /** Returns the commits fewer than DEPTH steps from commit ID, ID
+     *  itself included. */
+    Set<String> within(String id, int depth) {
+        Set<String> result = new HashSet<>();
+        BitSet seen = new BitSet();
+        List<Integer> frontier = new ArrayList<>();
+        frontier.add(position(id));
+        for (int d = 0; d < depth && !frontier.isEmpty(); d++) {
+            List<Integer> next = new ArrayList<>();
+            for (int p : frontier) {
+                if (seen.get(p)) {
+                    continue;
+                }
+                seen.set(p);
+                result.add(ids.get(p).toHex());
+                if (firstParents[p] != NONE) {
+                    next.add(firstParents[p]);
+                }
+                if (secondParents[p] != NONE) {
+                    next.add(secondParents[p]);
+                }
+            }
+            frontier = next;
+        }
+        return result;
+    }
+
+
+    /** Returns the commit that the breadth-first walk from commit OTHER
+     *  reaches first among the ancestors of commit HEAD, or null if the two
+     *  share no history. */
+    String firstCommonAncestor(String head, String other) {
+        Bitmap ancestors = reachable(head);
+        BitSet visited = new BitSet();
+        Queue<Integer> queue = new LinkedList<>();
+        queue.offer(position(other));
+        while (!queue.isEmpty()) {
+            int p = queue.poll();
+            if (visited.get(p)) {
+                continue;
+            }
+            visited.set(p);
+            if (ancestors.contains(p)) {
+                return ids.get(p).toHex();
+            }
+            if (firstParents[p] != NONE) {
+                queue.offer(firstParents[p]);
+            }
+            if (secondParents[p] != NONE) {
+                queue.offer(secondParents[p]);
+            }
+        }
+        return null;
+    }
+
+    /** Adds commit ID, whose parents are at FIRST and SECOND. */
+    private void append(ObjectId id, int first, int second) {
+        int p = ids.size();
+        if (p == firstParents.length) {
+            firstParents = Arrays.copyOf(firstParents, 2 * p);
+            secondParents = Arrays.copyOf(secondParents, 2 * p);
+            distances = Arrays.copyOf(distances, 2 * p);
+        }
+        ids.add(id);
+        positions.put(id, p);
+        firstParents[p] = first;
+        secondParents[p] = second;
+
+        int distance = 0;
+        if (first != NONE) {
+            distance = distances[first] + 1;
+        }
+        if (second != NONE) {
+            distance = Math.max(distance, distances[second] + 1);
+        }
+        if (distance >= BITMAP_INTERVAL) {
+            bitmaps.put(p, reachable(p));
+            distance = 0;
+        }
+        distances[p] = distance;
+        dirty = true;
+    }
+
+    private Commit readCommit(String id) {
+        return Utils.readObject(Utils.join(gitletDir, "commits", id), Commit.class);
+    }
+}
@@ -0,0 +1,187 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** The differences between two sequences of line numbers, as found by
+ *  Myers' O(ND) algorithm in its linear-space, divide-and-conquer form.
+ *
+ *  Common prefixes and suffixes are stripped before each split, which
+ *  makes the usual case of a few edits to a long file close to linear.
+ */
+class Diff {
+
+    /** A region where the two sequences differ: lines [aStart, aEnd) of
+     *  the first were replaced by lines [bStart, bEnd) of the second.
+     *  Either range may be empty. */
+    static class Hunk {
+        final int aStart;
+        final int aEnd;
+        final int bStart;
+        final int bEnd;
+
+        Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+    }
+
+    private final int[] a;
+    private final int[] b;
+    private final boolean[] changedA;
+    private final boolean[] changedB;
+
+    private Diff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        changedA = new boolean[a.length];
+        changedB = new boolean[b.length];
+    }
+
+    /** Returns the hunks that turn A into B, in order. */
+    static List<Hunk> compute(int[] a, int[] b) {
+        Diff diff = new Diff(a, b);
+        diff.compare(0, a.length, 0, b.length);
+        return diff.hunks();
+    }
+
+    /** Returns the hunks that turn lines A into lines B, in order. */
+    static List<Hunk> compute(Lines a, Lines b) {
+        int[][] numbers = Lines.number(a, b);
+        return compute(numbers[0], numbers[1]);
+    }
+
+    /** Marks the lines of a[aLo, aHi) and b[bLo, bHi) that are not part
+     *  of a longest common subsequence of the two. */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi--;
+            bHi--;
+        }
+        if (aLo == aHi) {
+            Arrays.fill(changedB, bLo, bHi, true);
+        } else if (bLo == bHi) {
+            Arrays.fill(changedA, aLo, aHi, true);
+        } else {
+            int[] split = middleSnake(aLo, aHi, bLo, bHi);
+            if (split == null) {
+                Arrays.fill(changedA, aLo, aHi, true);
+                Arrays.fill(changedB, bLo, bHi, true);
+            } else {
+                compare(aLo, split[0], bLo, split[1]);
+                compare(split[0], aHi, split[1], bHi);
+            }
+        }
+    }
+
+    /** Returns a point {x, y} through which some shortest edit script of
+     *  a[aLo, aHi) into b[bLo, bHi) passes, found by running the greedy
+     *  algorithm from both ends until the two paths meet. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int[] forward = new int[2 * maxD + 2];
+        int[] backward = new int[2 * maxD + 2];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean front = (delta & 1) != 0;
+        int k1start = 0;
+        int k1end = 0;
+        int k2start = 0;
+        int k2end = 0;
+        for (int d = 0; d < maxD; d++) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int i = offset + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && forward[i - 1] < forward[i + 1])) {
+                    x1 = forward[i + 1];
+                } else {
+                    x1 = forward[i - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+                    x1++;
+                    y1++;
+                }
+                forward[i] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    int j = offset + delta - k1;
+                    if (j >= 0 && j < backward.length && backward[j] != -1
+                            && x1 >= n - backward[j]) {
+                        return new int[] {aLo + x1, bLo + y1};
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int i = offset + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && backward[i - 1] < backward[i + 1])) {
+                    x2 = backward[i + 1];
+                } else {
+                    x2 = backward[i - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m && a[aHi - 1 - x2] == b[bHi - 1 - y2]) {
+                    x2++;
+                    y2++;
+                }
+                backward[i] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    int j = offset + delta - k2;
+                    if (j >= 0 && j < forward.length && forward[j] != -1) {
+                        int x1 = forward[j];
+                        int y1 = offset + x1 - j;
+                        if (x1 >= n - x2) {
+                            return new int[] {aLo + x1, bLo + y1};
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Gathers the marked lines into hunks. */
+    private List<Hunk> hunks() {
+        List<Hunk> result = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && j < b.length && !changedA[i] && !changedB[j]) {
+                i++;
+                j++;
+                continue;
+            }
+            int aStart = i;
+            int bStart = j;
+            while (i < a.length && changedA[i]) {
+                i++;
+            }
+            while (j < b.length && changedB[j]) {
+                j++;
+            }
+            result.add(new Hunk(aStart, i, bStart, j));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** A fast 64-bit hash of a stream of bytes, computed as XXH64 with seed 0.
+ *
+ *  A fingerprint is not an object id and is never stored in a commit or
+ *  sent to another repository: anyone can make two files with the same
+ *  fingerprint.  It only tells whether a working-tree file still holds
+ *  what it held when gitlet last hashed it, at several times the speed of
+ *  a cryptographic hash.
+ */
+class Fingerprint {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    /** Number of bytes consumed by each round of the four accumulators. */
+    static final int STRIPE = 32;
+
+    private long v1 = PRIME1 + PRIME2;
+    private long v2 = PRIME2;
+    private long v3 = 0;
+    private long v4 = -PRIME1;
+    private long total;
+    /** The bytes given that do not make up a whole stripe yet. */
+    private final byte[] pending = new byte[STRIPE];
+    private int pendingLength;
+
+    /** Returns the fingerprint of the contents of FILE. */
+    static long of(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            Fingerprint result = new Fingerprint();
+            byte[] buf = new byte[BlobStore.BUFFER_SIZE];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                result.update(buf, 0, n);
+            }
+            return result.value();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Adds BUF[OFF .. OFF+LEN-1] to the bytes fingerprinted. */
+    void update(byte[] buf, int off, int len) {
+        total += len;
+        if (pendingLength > 0) {
+            int n = Math.min(STRIPE - pendingLength, len);
+            System.arraycopy(buf, off, pending, pendingLength, n);
+            pendingLength += n;
+            off += n;
+            len -= n;
+            if (pendingLength < STRIPE) {
+                return;
+            }
+            stripe(ByteBuffer.wrap(pending).order(ByteOrder.LITTLE_ENDIAN), 0);
+            pendingLength = 0;
+        }
+        ByteBuffer words = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN);
+        int end = off + len;
+        for (; off + STRIPE <= end; off += STRIPE) {
+            stripe(words, off);
+        }
+        System.arraycopy(buf, off, pending, 0, end - off);
+        pendingLength = end - off;
+    }
+
+    /** Returns the fingerprint of the bytes given so far. */
+    long value() {
+        long h;
+        if (total >= STRIPE) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                    + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = PRIME5;
+        }
+        h += total;
+        ByteBuffer words = ByteBuffer.wrap(pending).order(ByteOrder.LITTLE_ENDIAN);
+        int i = 0;
+        for (; i + 8 <= pendingLength; i += 8) {
+            h ^= round(0, words.getLong(i));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if (i + 4 <= pendingLength) {
+            h ^= (words.getInt(i) & 0xffffffffL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            i += 4;
+        }
+        for (; i < pendingLength; i++) {
+            h ^= (pending[i] & 0xff) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private void stripe(ByteBuffer words, int off) {
+        v1 = round(v1, words.getLong(off));
+        v2 = round(v2, words.getLong(off + 8));
+        v3 = round(v3, words.getLong(off + 16));
+        v4 = round(v4, words.getLong(off + 24));
+    }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * PRIME2, 31) * PRIME1;
+    }
+
+    private static long merge(long h, long v) {
+        return (h ^ round(0, v)) * PRIME1 + PRIME4;
+    }
+}
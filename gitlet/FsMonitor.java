@@ -0,0 +1,371 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/** Tells which working-tree paths may have changed since gitlet last
+ *  looked at them, so that they alone need to be examined.
+ *
+ *  A long-lived "gitlet watch" process holds a lock on
+ *  .gitlet/fsmonitor.lock and appends every path the file system reports
+ *  as changed to the journal, .gitlet/fsmonitor, whose first line names
+ *  the process's generation.  Commands keep in .gitlet/fsmonitor-state
+ *  how far into the journal they have read and the paths read so far but
+ *  not yet examined.  To be sure every change made before it started has
+ *  reached the journal, a command creates a cookie file in .gitlet and
+ *  waits for the watcher to journal it.
+ *
+ *  Whenever the journal cannot be trusted to be complete, because no
+ *  watcher is running, a new one has started, its event queue overflowed
+ *  or the cookie never arrived, a command falls back to a full scan.
+ */
+class FsMonitor {
+
+    /** Longest a command waits for its cookie, in milliseconds. */
+    static final long COOKIE_TIMEOUT = 2000;
+    /** Size past which the watcher starts a new journal. */
+    static final long MAX_JOURNAL = 4 * 1024 * 1024;
+    /** Journal line recording that some events were lost. */
+    static final String OVERFLOW_LINE = "!overflow";
+    /** Prefix of journal lines recording a cookie. */
+    static final String COOKIE_LINE = "!cookie ";
+    /** Prefix of the names of cookie files. */
+    static final String COOKIE_PREFIX = "fsmonitor-cookie-";
+
+    /** What a repository's commands have taken from the journal. */
+    private static class State implements Serializable {
+        private String generation;
+        private long offset;
+        /** True once a full scan has been made since anything was missed. */
+        private boolean valid;
+        private final HashSet<String> dirty = new HashSet<>();
+    }
+
+    private final File gitletDir;
+    private final File journal;
+    private final File stateFile;
+    private State state;
+    private boolean modified;
+
+    /** The monitor of the repository in GITLETDIR. */
+    FsMonitor(File gitletDir) {
+        this.gitletDir = gitletDir;
+        this.journal = Utils.join(gitletDir, "fsmonitor");
+        this.stateFile = Utils.join(gitletDir, "fsmonitor-state");
+    }
+
+    /** Brings what is known up to date with the watcher.  Returns the
+     *  paths that may have changed and have not been examined since, or
+     *  null if that is not known and every path must be examined. */
+    Set<String> changed() {
+        if (!journal.isFile() || !watcherRunning()) {
+            return null;
+        }
+        String cookie = COOKIE_PREFIX + UUID.randomUUID();
+        File cookieFile = Utils.join(gitletDir, cookie);
+        try {
+            Files.createFile(cookieFile.toPath());
+            try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.READ)) {
+                JournalReader in = new JournalReader(channel);
+                String generation = in.readLine();
+                State known = stateFile.isFile() ? Utils.readObject(stateFile, State.class) : null;
+                boolean complete = known != null && Objects.equals(known.generation, generation)
+                        && known.offset <= channel.size();
+                state = complete ? known : new State();
+                state.generation = generation;
+                if (complete) {
+                    in.seek(known.offset);
+                }
+                long deadline = System.currentTimeMillis() + COOKIE_TIMEOUT;
+                while (true) {
+                    String line = in.readLine();
+                    if (line == null) {
+                        if (System.currentTimeMillis() > deadline) {
+                            modified = true;
+                            return null;
+                        }
+                        Thread.sleep(2);
+                        continue;
+                    }
+                    if (line.equals(COOKIE_LINE + cookie)) {
+                        break;
+                    } else if (line.equals(OVERFLOW_LINE)) {
+                        complete = false;
+                    } else if (!line.startsWith(COOKIE_LINE)) {
+                        state.dirty.add(line);
+                    }
+                }
+                state.offset = in.position();
+                state.valid &= complete;
+                modified = true;
+                return state.valid ? state.dirty : null;
+            }
+        } catch (IOException excp) {
+            return null;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            cookieFile.delete();
+        }
+    }
+
+    /** Records that PATH has been examined since it last changed. */
+    void examined(String path) {
+        if (state != null && state.dirty.remove(path)) {
+            modified = true;
+        }
+    }
+
+    /** Records that every path has been examined, after a full scan. */
+    void scanned() {
+        if (state != null) {
+            state.dirty.clear();
+            state.valid = true;
+            modified = true;
+        }
+    }
+
+    /** Writes what was learned back, if anything. */
+    void save() {
+        if (modified && state != null) {
+            Utils.writeObject(stateFile, state);
+            modified = false;
+        }
+    }
+
+    /** Returns true iff a watcher holds the lock. */
+    private boolean watcherRunning() {
+        File lockFile = Utils.join(gitletDir, "fsmonitor.lock");
+        if (!lockFile.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Reads the whole lines of a journal that may still be growing,
+     *  through a buffer, a block at a time. */
+    private static class JournalReader {
+        private final FileChannel channel;
+        private byte[] buf = new byte[BlobStore.BUFFER_SIZE];
+        /** The offset in the journal of buf[0]. */
+        private long base;
+        /** The unread bytes are buf[start .. end-1]. */
+        private int start;
+        private int end;
+
+        JournalReader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /** Returns the offset just past the last line read. */
+        long position() {
+            return base + start;
+        }
+
+        /** Makes the next line read the one starting at OFFSET. */
+        void seek(long offset) {
+            base = offset;
+            start = 0;
+            end = 0;
+        }
+
+        /** Returns the next line, without its newline, or null if the
+         *  journal does not yet hold all of it. */
+        String readLine() throws IOException {
+            int scanned = start;
+            while (true) {
+                for (; scanned < end; scanned++) {
+                    if (buf[scanned] == '\n') {
+                        String line = new String(buf, start, scanned - start, StandardCharsets.UTF_8);
+                        start = scanned + 1;
+                        return line;
+                    }
+                }
+                if (start > 0) {
+                    System.arraycopy(buf, start, buf, 0, end - start);
+                    base += start;
+                    end -= start;
+                    scanned -= start;
+                    start = 0;
+                }
+                if (end == buf.length) {
+                    buf = Arrays.copyOf(buf, 2 * buf.length);
+                }
+                int n = channel.read(ByteBuffer.wrap(buf, end, buf.length - end), base + end);
+                if (n <= 0) {
+                    return null;
+                }
+                end += n;
+            }
+        }
+    }
+
+    /** Watches the working tree WORKTREE, journaling every change, until
+     *  the process is stopped. */
+    static void watch(File workTree) throws IOException {
+        File gitletDir = Utils.join(workTree, ".gitlet");
+        File lockFile = Utils.join(gitletDir, "fsmonitor.lock");
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                throw Utils.error("A watcher is already running for this repository.");
+            }
+            new Watcher(workTree.toPath(), gitletDir, watcher).run();
+        }
+    }
+
+    /** The running watcher of one working tree. */
+    private static class Watcher {
+        private final Path root;
+        private final Path gitletPath;
+        private final File journal;
+        private final WatchService service;
+        private final Map<WatchKey, Path> dirs = new HashMap<>();
+        private OutputStream out;
+        private long written;
+
+        Watcher(Path root, File gitletDir, WatchService service) {
+            this.root = root;
+            this.gitletPath = gitletDir.toPath();
+            this.journal = Utils.join(gitletDir, "fsmonitor");
+            this.service = service;
+        }
+
+        void run() throws IOException {
+            startJournal();
+            dirs.put(gitletPath.register(service, ENTRY_CREATE), gitletPath);
+            register(root, false);
+            System.out.println("Watching " + root);
+            try {
+                while (true) {
+                    WatchKey key = service.take();
+                    Path dir = dirs.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            append(OVERFLOW_LINE);
+                        } else if (dir != null) {
+                            changed(dir.resolve((Path) event.context()), event.kind());
+                        }
+                    }
+                    if (!key.reset()) {
+                        dirs.remove(key);
+                    }
+                    out.flush();
+                    if (written > MAX_JOURNAL) {
+                        startJournal();
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException excp) {
+                return;
+            } finally {
+                out.close();
+            }
+        }
+
+        /** Journals PATH, which had an event of KIND. */
+        private void changed(Path path, WatchEvent.Kind<?> kind) throws IOException {
+            if (path.getParent().equals(gitletPath)) {
+                String name = path.getFileName().toString();
+                if (name.startsWith(COOKIE_PREFIX)) {
+                    append(COOKIE_LINE + name);
+                }
+                return;
+            }
+            append(relative(path));
+            if (kind == ENTRY_CREATE && Files.isDirectory(path)) {
+                register(path, true);
+            }
+        }
+
+        /** Watches DIR and the directories under it, journaling what they
+         *  hold if NEW, since it may have changed before it was watched. */
+        private void register(Path dir, boolean isNew) throws IOException {
+            try {
+                Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs)
+                            throws IOException {
+                        if (path.equals(gitletPath)) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        dirs.put(path.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), path);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path path, BasicFileAttributes attrs)
+                            throws IOException {
+                        if (isNew) {
+                            append(relative(path));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException excp) {
+                append(OVERFLOW_LINE);
+            }
+        }
+
+        /** Starts a new journal, of a new generation. */
+        private void startJournal() throws IOException {
+            if (out != null) {
+                out.close();
+            }
+            out = Files.newOutputStream(journal.toPath());
+            written = 0;
+            append(UUID.randomUUID().toString());
+            out.flush();
+        }
+
+        private void append(String line) throws IOException {
+            byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+            out.write(bytes);
+            written += bytes.length;
+        }
+
+        private String relative(Path path) {
+            return root.relativize(path).toString().replace(File.separatorChar, '/');
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+
+/** The hash function that names the commits and blobs of a repository.
+ *
+ *  It is chosen when the repository is created, with "init --hash=NAME",
+ *  and kept under the "hash" key of its config; repositories without the
+ *  key use SHA1.  It cannot be changed afterwards, since every id would
+ *  change with it, and repositories using different functions cannot
+ *  exchange objects.
+ *
+ *  Each thread reuses one MessageDigest and one read buffer per
+ *  HashAlgorithm rather than making new ones for every object hashed.
+ */
+class HashAlgorithm {
+
+    /** Names of the supported functions. */
+    static final String SHA1 = "sha1";
+    static final String SHA256 = "sha256";
+
+    /** The config key recording the function. */
+    static final String CONFIG_KEY = "hash";
+
+    private final String name;
+    private final String digestName;
+    private final int length;
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(this::newDigest);
+    private final ThreadLocal<byte[]> buffers =
+            ThreadLocal.withInitial(() -> new byte[BlobStore.BUFFER_SIZE]);
+
+    private HashAlgorithm(String name, String digestName, int length) {
+        this.name = name;
+        this.digestName = digestName;
+        this.length = length;
+    }
+
+    /** Returns the function called NAME.  Throws a GitletException if
+     *  there is none. */
+    static HashAlgorithm named(String name) {
+        switch (name) {
+            case SHA1:
+                return new HashAlgorithm(SHA1, "SHA-1", ObjectId.LENGTH);
+            case SHA256:
+                return new HashAlgorithm(SHA256, "SHA-256", ObjectId.WIDE_LENGTH);
+            default:
+                throw Utils.error("%s", "Unknown hash algorithm: " + name + ".");
+        }
+    }
+
+    /** Returns the function of the repository in GITLETDIR. */
+    static HashAlgorithm of(File gitletDir) {
+        File configFile = Utils.join(gitletDir, "config");
+        if (configFile.isFile()) {
+            HashMap<String, String> config = Utils.readObject(configFile, HashMap.class);
+            if (config.containsKey(CONFIG_KEY)) {
+                return named(config.get(CONFIG_KEY));
+            }
+        }
+        return named(SHA1);
+    }
+
+    /** Returns the name of this function, as given to init. */
+    String name() {
+        return name;
+    }
+
+    /** Returns the number of bytes in an id. */
+    int length() {
+        return length;
+    }
+
+    /** Returns a new digest computing this function. */
+    MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(digestName);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support " + digestName);
+        }
+    }
+
+    /** Returns this thread's digest, reset.  It must be finished with
+     *  digest() before it is asked for again. */
+    MessageDigest digest() {
+        MessageDigest md = digests.get();
+        md.reset();
+        return md;
+    }
+
+    /** Returns the id of CONTENTS, in hexadecimal. */
+    String hash(byte[] contents) {
+        return Utils.toHex(digest().digest(contents));
+    }
+
+    /** Returns the id of CONTENTS. */
+    ObjectId hashId(byte[] contents) {
+        return ObjectId.fromBytes(digest().digest(contents), 0, length);
+    }
+
+    /** Returns the id of the contents of FILE, in hexadecimal, adding them
+     *  to FINGERPRINT as well if it is not null, in the same pass. */
+    String hash(File file, Fingerprint fingerprint) {
+        try (InputStream in = new FileInputStream(file)) {
+            MessageDigest md = digest();
+            byte[] buf = buffers.get();
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
+                if (fingerprint != null) {
+                    fingerprint.update(buf, 0, n);
+                }
+            }
+            return Utils.toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package gitlet;
+
+import java.security.MessageDigest;
+import java.util.Random;
+
+/** A benchmark whose main program may be invoked as follows:
+ *      java gitlet.HashBenchmark [MEGABYTES]
+ *  It hashes MEGABYTES (default 256) of random data, in buffers the size
+ *  gitlet reads files with, under each HashAlgorithm and as a
+ *  Fingerprint, and prints the throughput of each.  The first pass of
+ *  each warms up the JIT and is not reported.
+ */
+public class HashBenchmark {
+
+    /** Runs the benchmark over the number of megabytes in ARGS[0]. */
+    public static void main(String... args) {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        byte[] buf = new byte[BlobStore.BUFFER_SIZE];
+        new Random(0).nextBytes(buf);
+        long rounds = (long) megabytes * 1024 * 1024 / buf.length;
+
+        for (String name : new String[] {HashAlgorithm.SHA1, HashAlgorithm.SHA256}) {
+            HashAlgorithm algorithm = HashAlgorithm.named(name);
+            long nanos = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                long start = System.nanoTime();
+                MessageDigest md = algorithm.digest();
+                for (long i = 0; i < rounds; i++) {
+                    md.update(buf, 0, buf.length);
+                }
+                md.digest();
+                nanos = System.nanoTime() - start;
+            }
+            report(name, rounds * buf.length, nanos);
+        }
+
+        long nanos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            Fingerprint fingerprint = new Fingerprint();
+            for (long i = 0; i < rounds; i++) {
+                fingerprint.update(buf, 0, buf.length);
+            }
+            fingerprint.value();
+            nanos = System.nanoTime() - start;
+        }
+        report("fingerprint", rounds * buf.length, nanos);
+    }
+
+    /** Prints the throughput of NAME, which took NANOS to hash BYTES. */
+    private static void report(String name, long bytes, long nanos) {
+        System.out.printf("%-12s %8.1f MB/s%n", name,
+                bytes / (1024.0 * 1024.0) / (nanos / 1e9));
+    }
+}
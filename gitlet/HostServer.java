@@ -0,0 +1,495 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Serves the gitlet repositories under one directory to many clients
+ *  over a Unix domain socket, so that each request does not need a JVM
+ *  of its own.
+ *
+ *  A client sends requests of one line each, "VERB REPO ARGS...", and
+ *  gets back a line starting with "ok" or "error", possibly followed by
+ *  data.  The verbs are:
+ *
+ *    branches REPO               ok N, then N lines "NAME ID"
+ *    log REPO BRANCH [LIMIT]     ok N, then N lines "ID MESSAGE"
+ *    cat REPO BLOB               ok SIZE, then SIZE bytes
+ *    fetch REPO BRANCH [HAVE...] ok ID, then a pack of what ID needs
+ *    push REPO BRANCH OLD NEW    followed by a pack; OLD is - for a new
+ *                                branch; ok once BRANCH has moved from
+ *                                OLD forward to NEW, a descendant of it
+ *    stats                       ok N, then N lines of metrics
+ *
+ *  Each connection runs on a virtual thread where the Java runtime has
+ *  them, and otherwise on a bounded pool of platform threads.  At most a
+ *  fixed number of connections are open at once, never more than the
+ *  pool has threads; any more are answered "error busy" as they are
+ *  accepted and closed, rather than queued.  A connection left idle
+ *  between requests for IDLE_TIMEOUT is closed, so idle clients cannot
+ *  hold every slot.  At most a fixed number of requests run at once; the
+ *  rest wait briefly for a turn and are turned away as busy if none
+ *  comes.  Each repository keeps its own blob store, commit graph, cache
+ *  of recently read commits and request counts and timings.
+ */
+class HostServer {
+
+    /** Requests allowed to run at once unless told otherwise. */
+    static final int DEFAULT_ACTIVE = 64;
+    /** Connections allowed open at once unless told otherwise. */
+    static final int DEFAULT_CONNECTIONS = 4096;
+    /** Longest a connection may wait between requests, in milliseconds. */
+    static final long IDLE_TIMEOUT = 60000;
+    /** Platform threads used when virtual threads are not available. */
+    static final int POOL_THREADS = 256;
+    /** Longest a request waits for its turn, in milliseconds. */
+    static final long ADMISSION_WAIT = 5000;
+    /** Commits cached per repository. */
+    static final int COMMIT_CACHE_SIZE = 4096;
+    /** Longest request line accepted. */
+    static final int MAX_LINE = 64 * 1024;
+
+    private final File root;
+    private final int active;
+    private final int connections;
+    private final Semaphore admission;
+    private final ConcurrentHashMap<String, Hosted> hosted = new ConcurrentHashMap<>();
+    private final Set<Connection> open = ConcurrentHashMap.newKeySet();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /** A server for the repositories in the subdirectories of ROOT, running
+     *  at most ACTIVE requests at once and keeping at most CONNECTIONS
+     *  connections open. */
+    HostServer(File root, int active, int connections) {
+        this.root = root;
+        this.active = active;
+        this.connections = connections;
+        this.admission = new Semaphore(active, true);
+    }
+
+    /** One client's connection. */
+    private static class Connection {
+        private final SocketChannel channel;
+        /** When the connection last finished a request, from nanoTime. */
+        private volatile long idleSince = System.nanoTime();
+        private volatile boolean busy;
+        private volatile boolean timedOut;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /** Listens on the socket file SOCKET until the process is stopped. */
+    void serve(File socket) throws IOException {
+        Files.deleteIfExists(socket.toPath());
+        ExecutorService executor = newExecutor();
+        Semaphore slots = new Semaphore(executor instanceof ThreadPoolExecutor
+                ? Math.min(connections, POOL_THREADS) : connections);
+        ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "gitlet-idle-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleWithFixedDelay(this::closeIdle, IDLE_TIMEOUT / 4, IDLE_TIMEOUT / 4,
+                TimeUnit.MILLISECONDS);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+            System.out.println("Serving " + root + " on " + socket);
+            while (true) {
+                SocketChannel client = server.accept();
+                if (!slots.tryAcquire()) {
+                    rejected.increment();
+                    turnAway(client);
+                    continue;
+                }
+                Connection connection = new Connection(client);
+                executor.execute(() -> {
+                    try {
+                        handle(connection);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } finally {
+            reaper.shutdownNow();
+            executor.shutdown();
+            Files.deleteIfExists(socket.toPath());
+        }
+    }
+
+    /** Tells CLIENT, accepted with every slot taken, that the server is
+     *  busy, and closes it. */
+    private static void turnAway(SocketChannel client) {
+        try (client) {
+            client.write(ByteBuffer.wrap("error busy\n".getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Closes the connections that have been waiting for a request for
+     *  longer than IDLE_TIMEOUT. */
+    private void closeIdle() {
+        long now = System.nanoTime();
+        for (Connection connection : open) {
+            if (!connection.busy
+                    && now - connection.idleSince > TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT)) {
+                connection.timedOut = true;
+                try {
+                    connection.channel.close();
+                } catch (IOException excp) {
+                    dropped.increment();
+                }
+            }
+        }
+    }
+
+    /** Returns an executor running each task on a virtual thread of its
+     *  own if this runtime has them, and on a fixed pool otherwise. */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newFixedThreadPool(POOL_THREADS);
+        }
+    }
+
+    /** Answers the requests on CONNECTION until the client closes it or
+     *  it times out.  Connections lost to any other I/O error are counted
+     *  as dropped. */
+    private void handle(Connection connection) {
+        open.add(connection);
+        SocketChannel client = connection.channel;
+        try (client;
+             InputStream in = new BufferedInputStream(Channels.newInputStream(client));
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(client))) {
+            for (String line = readLine(in); line != null; line = readLine(in)) {
+                if (!line.isBlank()) {
+                    connection.busy = true;
+                    request(line.trim().split("\\s+"), in, out);
+                    out.flush();
+                    connection.idleSince = System.nanoTime();
+                    connection.busy = false;
+                }
+            }
+        } catch (IOException excp) {
+            if (!connection.timedOut) {
+                dropped.increment();
+            }
+        } finally {
+            open.remove(connection);
+        }
+    }
+
+    /** Runs the request made of WORDS, reading any data that follows it
+     *  from IN and writing the response to OUT. */
+    private void request(String[] words, InputStream in, OutputStream out) throws IOException {
+        boolean admitted;
+        try {
+            admitted = admission.tryAcquire(ADMISSION_WAIT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (!admitted) {
+            rejected.increment();
+            respond(out, "error busy");
+            return;
+        }
+        Hosted repo = null;
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            if (words[0].equals("stats")) {
+                stats(out);
+                return;
+            }
+            if (words.length < 2) {
+                throw Utils.error("Incorrect operands.");
+            }
+            repo = repository(words[1]);
+            String[] args = Arrays.copyOfRange(words, 2, words.length);
+            switch (words[0]) {
+                case "branches":
+                    repo.branches(out);
+                    break;
+                case "log":
+                    repo.log(args, out);
+                    break;
+                case "cat":
+                    repo.cat(args, out);
+                    break;
+                case "fetch":
+                    repo.fetch(args, out);
+                    break;
+                case "push":
+                    repo.push(args, in, out);
+                    break;
+                default:
+                    throw Utils.error("No command with that name exists.");
+            }
+        } catch (GitletException | IllegalArgumentException excp) {
+            failed = true;
+            respond(out, "error " + String.valueOf(excp.getMessage()).replace('\n', ' '));
+        } catch (IOException excp) {
+            failed = true;
+            throw excp;
+        } finally {
+            admission.release();
+            if (repo != null) {
+                repo.record(System.nanoTime() - start, failed);
+            }
+        }
+    }
+
+    /** Returns the repository called NAME, a directory of the root. */
+    private Hosted repository(String name) {
+        if (name.isEmpty() || name.startsWith(".") || name.contains("/")
+                || name.contains(File.separator)) {
+            throw Utils.error("No repository named %s.", name);
+        }
+        Hosted repo = hosted.get(name);
+        if (repo == null) {
+            File gitletDir = Utils.join(root, name, ".gitlet");
+            if (!Utils.join(gitletDir, "branches").isFile()) {
+                throw Utils.error("No repository named %s.", name);
+            }
+            repo = hosted.computeIfAbsent(name, k -> new Hosted(name, gitletDir));
+        }
+        return repo;
+    }
+
+    /** Writes the metrics of every repository served so far. */
+    private void stats(OutputStream out) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("server connections=%d active=%d waiting=%d rejected=%d dropped=%d",
+                open.size(), active - admission.availablePermits(), admission.getQueueLength(),
+                rejected.sum(), dropped.sum()));
+        for (Hosted repo : new TreeMap<>(hosted).values()) {
+            lines.add(repo.metrics());
+        }
+        respond(out, "ok " + lines.size());
+        for (String line : lines) {
+            respond(out, line);
+        }
+    }
+
+    /** A repository being served, with its caches and metrics. */
+    private static class Hosted {
+        private final String name;
+        private final File gitletDir;
+        private final BlobStore blobs;
+        private final CommitGraph graph;
+        private final Map<String, Commit> commits;
+        private final Set<String> shallow;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder packedBytes = new LongAdder();
+
+        Hosted(String name, File gitletDir) {
+            this.name = name;
+            this.gitletDir = gitletDir;
+            this.blobs = Repository.remoteBlobs(gitletDir);
+            this.graph = CommitGraph.load(gitletDir);
+            this.shallow = Utils.shallowCommits(gitletDir);
+            this.commits = Collections.synchronizedMap(
+                new LinkedHashMap<String, Commit>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Commit> eldest) {
+                        return size() > COMMIT_CACHE_SIZE;
+                    }
+                });
+        }
+
+        void record(long nanos, boolean failed) {
+            requests.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        String metrics() {
+            long count = requests.sum();
+            return String.format("%s requests=%d errors=%d mean_ms=%.3f max_ms=%.3f packed_bytes=%d",
+                    name, count, errors.sum(),
+                    count == 0 ? 0.0 : totalNanos.sum() / 1e6 / count,
+                    maxNanos.get() / 1e6, packedBytes.sum());
+        }
+
+        private HashMap<String, String> readBranches() {
+            HashMap<String, String> branches =
+                    Utils.readObject(Utils.join(gitletDir, "branches"), HashMap.class);
+            branches.remove("current");
+            return branches;
+        }
+
+        private String branch(String branchName) {
+            String id = readBranches().get(branchName);
+            if (id == null) {
+                throw Utils.error("That remote does not have that branch.");
+            }
+            return id;
+        }
+
+        private Commit commit(String id) {
+            Commit commit = commits.get(id);
+            if (commit == null) {
+                commit = Utils.getCommit(gitletDir, id);
+                commits.put(id, commit);
+            }
+            return commit;
+        }
+
+        void branches(OutputStream out) throws IOException {
+            TreeMap<String, String> branches = new TreeMap<>(readBranches());
+            respond(out, "ok " + branches.size());
+            for (Map.Entry<String, String> entry : branches.entrySet()) {
+                respond(out, entry.getKey() + " " + entry.getValue());
+            }
+        }
+
+        void log(String[] args, OutputStream out) throws IOException {
+            if (args.length < 1) {
+                throw Utils.error("Incorrect operands.");
+            }
+            int limit = args.length > 1 ? Integer.parseInt(args[1]) : Integer.MAX_VALUE;
+            List<String> lines = new ArrayList<>();
+            for (String id = branch(args[0]); id != null && lines.size() < limit;
+                 id = shallow.contains(id) ? null : commit(id).getParent()) {
+                lines.add(id + " " + commit(id).getMessage().replace('\n', ' '));
+            }
+            respond(out, "ok " + lines.size());
+            for (String line : lines) {
+                respond(out, line);
+            }
+        }
+
+        void cat(String[] args, OutputStream out) throws IOException {
+            if (args.length != 1 || !blobs.contains(args[0])) {
+                throw Utils.error("No blob with that id exists.");
+            }
+            respond(out, "ok " + blobs.size(args[0]));
+            try (InputStream in = blobs.open(args[0])) {
+                packedBytes.add(in.transferTo(out));
+            }
+        }
+
+        void fetch(String[] args, OutputStream out) throws IOException {
+            if (args.length < 1) {
+                throw Utils.error("Incorrect operands.");
+            }
+            String want = branch(args[0]);
+            Transfer transfer = new Transfer(gitletDir, blobs, graph);
+            synchronized (graph) {
+                transfer.negotiate(want, Arrays.asList(args).subList(1, args.length), null, null);
+            }
+            respond(out, "ok " + want);
+            transfer.writePack(new CountingStream(out, packedBytes));
+        }
+
+        void push(String[] args, InputStream in, OutputStream out) throws IOException {
+            if (args.length != 3) {
+                throw Utils.error("Incorrect operands.");
+            }
+            String expected = args[1].equals("-") ? null : args[1];
+            Transfer.Received received = Transfer.unpack(in, gitletDir, blobs);
+            packedBytes.add(received.bytes);
+            if (!Utils.join(gitletDir, "commits", args[2]).isFile()) {
+                throw Utils.error("No commit with that id exists.");
+            }
+            if (expected != null && Utils.join(gitletDir, "commits", expected).isFile()) {
+                boolean fastForward;
+                synchronized (graph) {
+                    fastForward = graph.isAncestor(expected, args[2]);
+                }
+                if (!fastForward) {
+                    throw Utils.error("Please pull down remote changes before pushing.");
+                }
+            }
+            if (!Transfer.compareAndSet(gitletDir, args[0], expected, args[2])) {
+                throw Utils.error("Please pull down remote changes before pushing.");
+            }
+            respond(out, "ok " + received.summary());
+        }
+    }
+
+    /** An output stream that adds the bytes written through it to a count. */
+    private static class CountingStream extends java.io.FilterOutputStream {
+        private final LongAdder count;
+
+        CountingStream(OutputStream out, LongAdder count) {
+            super(out);
+            this.count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count.increment();
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws IOException {
+            out.write(buf, off, len);
+            count.add(len);
+        }
+    }
+
+    private static void respond(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the next line of IN without its newline, or null at the end
+     *  of the stream. */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                return line.size() == 0 ? null : line.toString(StandardCharsets.UTF_8);
+            }
+            if (line.size() >= MAX_LINE) {
+                throw new IOException("Request line too long.");
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,256 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/** The files gitlet leaves alone, as given by .gitletignore files.
+ *
+ *  Each line of a .gitletignore is a glob over the paths under its
+ *  directory.  A line starting with "!" re-includes what an earlier line
+ *  excluded, and one ending with "/" matches only directories.  A pattern
+ *  with a slash other than at its end is anchored to the directory of its
+ *  file; one without matches at any depth.  "**" matches any number of
+ *  directories.  The last matching line wins, a file's lines outranking
+ *  those of the directories above it, and nothing under an ignored
+ *  directory can be re-included, so walks skip such directories whole.
+ *
+ *  Every pattern is compiled into one trie over path segments.  A path is
+ *  matched by running the trie as an automaton over its segments, looking
+ *  segments up by name or by suffix in hash maps, so the cost depends on
+ *  the length of the path rather than on the number of patterns.  Only
+ *  segments with wildcards other than a leading "*" are tried one by one.
+ */
+class IgnoreRules {
+
+    /** The name of the files holding the patterns. */
+    static final String FILE_NAME = ".gitletignore";
+
+    /** One state of the automaton: what has matched so far. */
+    private static class Node {
+        private final HashMap<String, Node> literals = new HashMap<>();
+        /** Children for segments "*SUFFIX", by SUFFIX. */
+        private final HashMap<String, Node> suffixes = new HashMap<>();
+        private final TreeSet<Integer> suffixLengths = new TreeSet<>();
+        private final List<Pattern> globs = new ArrayList<>();
+        private final List<Node> globNodes = new ArrayList<>();
+        /** The child for "**", which matches any number of segments. */
+        private Node anyDepth;
+        private boolean isAnyDepth;
+        /** The highest-ranked rules ending here, for any path and for
+         *  directories only, or -1. */
+        private int rule = -1;
+        private int dirRule = -1;
+    }
+
+    private final File workTree;
+    private final Node root = new Node();
+    private final List<Boolean> negated = new ArrayList<>();
+    private final Set<String> loaded = new HashSet<>();
+
+    /** The rules of the working tree WORKTREE, read as they are needed. */
+    IgnoreRules(File workTree) {
+        this.workTree = workTree;
+    }
+
+    /** Returns true iff PATH, relative to the working tree, is ignored.
+     *  ISDIR tells whether it is a directory. */
+    boolean ignored(String path, boolean isDir) {
+        String[] segments = path.split("/");
+        String dir = "";
+        load(dir);
+        for (int i = 0; i < segments.length - 1; i++) {
+            dir = dir.isEmpty() ? segments[i] : dir + "/" + segments[i];
+            load(dir);
+        }
+        List<Node> states = closure(List.of(root));
+        for (int i = 0; i < segments.length; i++) {
+            states = step(states, segments[i]);
+            if (states.isEmpty()) {
+                return false;
+            }
+            boolean last = i == segments.length - 1;
+            int rule = -1;
+            for (Node node : states) {
+                rule = Math.max(rule, node.rule);
+                if (!last || isDir) {
+                    rule = Math.max(rule, node.dirRule);
+                }
+            }
+            if (rule >= 0 && !negated.get(rule)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Reads the patterns of DIR's .gitletignore, if it has one and they
+     *  have not been read yet. */
+    private void load(String dir) {
+        if (!loaded.add(dir)) {
+            return;
+        }
+        File file = dir.isEmpty() ? Utils.join(workTree, FILE_NAME)
+                : Utils.join(workTree, dir, FILE_NAME);
+        if (file.isFile()) {
+            for (String line : Utils.readContentsAsString(file).split("\r?\n")) {
+                add(dir, line);
+            }
+        }
+    }
+
+    /** Adds LINE of the .gitletignore in directory BASE. */
+    void add(String base, String line) {
+        String pattern = line.replaceAll("(?<!\\\\)\\s+$", "");
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return;
+        }
+        boolean negate = pattern.startsWith("!");
+        if (negate) {
+            pattern = pattern.substring(1);
+        } else if (pattern.startsWith("\\")) {
+            pattern = pattern.substring(1);
+        }
+        boolean dirOnly = pattern.endsWith("/");
+        pattern = pattern.replaceAll("/+$", "");
+        if (pattern.isEmpty()) {
+            return;
+        }
+        boolean anchored = pattern.contains("/");
+        pattern = pattern.replaceAll("^/+", "");
+
+        Node node = root;
+        if (!base.isEmpty()) {
+            for (String segment : base.split("/")) {
+                node = child(node, segment, true);
+            }
+        }
+        if (!anchored) {
+            node = child(node, "**", false);
+        }
+        for (String segment : pattern.split("/+")) {
+            node = child(node, segment, false);
+        }
+        int rule = negated.size();
+        negated.add(negate);
+        if (dirOnly) {
+            node.dirRule = rule;
+        } else {
+            node.rule = rule;
+        }
+    }
+
+    /** Returns the child of NODE for SEGMENT, adding it if needed.  If
+     *  LITERAL, SEGMENT has no wildcards. */
+    private static Node child(Node node, String segment, boolean literal) {
+        if (literal || !segment.matches(".*[*?\\[\\\\].*")) {
+            return node.literals.computeIfAbsent(segment, k -> new Node());
+        } else if (segment.equals("**")) {
+            if (node.anyDepth == null) {
+                node.anyDepth = new Node();
+                node.anyDepth.isAnyDepth = true;
+            }
+            return node.anyDepth;
+        } else if (segment.startsWith("*") && !segment.substring(1).matches(".*[*?\\[\\\\].*")) {
+            String suffix = segment.substring(1);
+            node.suffixLengths.add(suffix.length());
+            return node.suffixes.computeIfAbsent(suffix, k -> new Node());
+        }
+        Pattern glob = Pattern.compile(globToRegex(segment));
+        for (int i = 0; i < node.globs.size(); i++) {
+            if (node.globs.get(i).pattern().equals(glob.pattern())) {
+                return node.globNodes.get(i);
+            }
+        }
+        Node result = new Node();
+        node.globs.add(glob);
+        node.globNodes.add(result);
+        return result;
+    }
+
+    /** Returns the states reached from STATES by matching SEGMENT. */
+    private static List<Node> step(List<Node> states, String segment) {
+        List<Node> next = new ArrayList<>();
+        for (Node node : states) {
+            if (node.isAnyDepth) {
+                next.add(node);
+            }
+            Node literal = node.literals.get(segment);
+            if (literal != null) {
+                next.add(literal);
+            }
+            for (int length : node.suffixLengths) {
+                if (length > segment.length()) {
+                    break;
+                }
+                Node suffix = node.suffixes.get(segment.substring(segment.length() - length));
+                if (suffix != null) {
+                    next.add(suffix);
+                }
+            }
+            for (int i = 0; i < node.globs.size(); i++) {
+                if (node.globs.get(i).matcher(segment).matches()) {
+                    next.add(node.globNodes.get(i));
+                }
+            }
+        }
+        return closure(next);
+    }
+
+    /** Returns STATES with the states reachable from them by matching no
+     *  segment, through "**", added, each state once. */
+    private static List<Node> closure(List<Node> states) {
+        Map<Node, Boolean> seen = new IdentityHashMap<>();
+        List<Node> result = new ArrayList<>();
+        for (Node node : states) {
+            if (seen.put(node, true) == null) {
+                result.add(node);
+            }
+        }
+        for (int i = 0; i < result.size(); i++) {
+            Node any = result.get(i).anyDepth;
+            if (any != null && seen.put(any, true) == null) {
+                result.add(any);
+            }
+        }
+        return result;
+    }
+
+    /** Returns a regular expression matching what the glob SEGMENT
+     *  matches within one path segment. */
+    private static String globToRegex(String segment) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '[') {
+                int end = segment.indexOf(']', i + 2);
+                if (end < 0) {
+                    regex.append("\\[");
+                    continue;
+                }
+                String set = segment.substring(i + 1, end);
+                if (set.startsWith("!")) {
+                    set = "^" + set.substring(1);
+                }
+                regex.append('[').append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                i = end;
+            } else if (c == '\\' && i + 1 < segment.length()) {
+                regex.append(Pattern.quote(String.valueOf(segment.charAt(++i))));
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+}
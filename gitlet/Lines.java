@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** The contents of a text file, split into lines.
+ *
+ *  The bytes are kept in one array with the offset at which each line
+ *  starts, rather than as a String per line.  A line includes its
+ *  terminating newline, so a last line without one differs from the same
+ *  text followed by a newline.
+ */
+class Lines {
+
+    /** Files with a zero byte among their first BINARY_PROBE bytes are
+     *  taken to be binary, as git does. */
+    static final int BINARY_PROBE = 8000;
+
+    private final byte[] data;
+    private final int length;
+    /** starts[i] is the offset of line i; starts[size()] is LENGTH. */
+    private final int[] starts;
+    private final int size;
+
+    private Lines(byte[] data, int length) {
+        this.data = data;
+        this.length = length;
+        int[] offsets = new int[16];
+        int count = 0;
+        int start = 0;
+        while (start < length) {
+            if (count + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            }
+            offsets[count++] = start;
+            int end = start;
+            while (end < length && data[end] != '\n') {
+                end++;
+            }
+            start = Math.min(end + 1, length);
+        }
+        offsets[count] = length;
+        this.starts = offsets;
+        this.size = count;
+    }
+
+    /** Returns the lines of the LENGTH bytes at the start of DATA. */
+    static Lines of(byte[] data, int length) {
+        return new Lines(data, length);
+    }
+
+    /** Returns the lines of everything remaining in IN. */
+    static Lines read(InputStream in) {
+        try {
+            byte[] data = in.readAllBytes();
+            return new Lines(data, data.length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** The lines of an empty file. */
+    static Lines empty() {
+        return new Lines(new byte[0], 0);
+    }
+
+    /** Returns the number of lines. */
+    int size() {
+        return size;
+    }
+
+    /** Returns true iff these lines look like the contents of a binary file. */
+    boolean isBinary() {
+        for (int i = 0; i < Math.min(length, BINARY_PROBE); i++) {
+            if (data[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns true iff line I ends with a newline. */
+    boolean endsWithNewline(int i) {
+        return starts[i + 1] > starts[i] && data[starts[i + 1] - 1] == '\n';
+    }
+
+    /** Writes lines [FROM, TO) to OUT. */
+    void write(OutputStream out, int from, int to) throws IOException {
+        out.write(data, starts[from], starts[to] - starts[from]);
+    }
+
+    /** Returns a 64-bit FNV-1a hash of line I. */
+    long hash(int i) {
+        long h = 0xcbf29ce484222325L;
+        for (int k = starts[i]; k < starts[i + 1]; k++) {
+            h = (h ^ (data[k] & 0xff)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Returns line I without its newline, decoded as UTF-8. */
+    String line(int i) {
+        int end = starts[i + 1];
+        if (endsWithNewline(i)) {
+            end--;
+        }
+        return new String(data, starts[i], end - starts[i], StandardCharsets.UTF_8);
+    }
+
+    /** Returns, for each of TEXTS, an array giving each of its lines a
+     *  number, where two lines get the same number iff they are equal. */
+    static int[][] number(Lines... texts) {
+        HashMap<Key, Integer> numbers = new HashMap<>();
+        int[][] result = new int[texts.length][];
+        for (int t = 0; t < texts.length; t++) {
+            Lines text = texts[t];
+            result[t] = new int[text.size];
+            for (int i = 0; i < text.size; i++) {
+                Key key = new Key(text.data, text.starts[i], text.starts[i + 1]);
+                Integer n = numbers.putIfAbsent(key, numbers.size());
+                result[t][i] = n == null ? numbers.size() - 1 : n;
+            }
+        }
+        return result;
+    }
+
+    /** A line, compared by contents. */
+    private static class Key {
+        private final byte[] data;
+        private final int start;
+        private final int end;
+        private final int hash;
+
+        Key(byte[] data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            int h = 1;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + data[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash
+                    && Arrays.equals(data, start, end, other.data, other.start, other.end);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package gitlet;
 
+import java.util.Arrays;
+
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author Andrew Falcon
  */
@@ -15,9 +17,21 @@ public class Main {
             System.out.println("Please enter a command.");
             return;
         }
+        try {
+            run(repo, args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    private static void run(Repository repo, String[] args) {
         String firstArg = args[0];
         if (firstArg.equals("init")) {
-            repo.init();
+            repo.init(Arrays.copyOfRange(args, 1, args.length));
+        } else if (firstArg.equals("clone")) {
+            repo.cloneFrom(Arrays.copyOfRange(args, 1, args.length));
+        } else if (firstArg.equals("serve")) {
+            repo.serve(Arrays.copyOfRange(args, 1, args.length));
         } else {
             if (repo.inInitializedRepository()) {
                 switch (firstArg) {
@@ -73,6 +87,52 @@ public class Main {
                     case "merge":
                         repo.merge(args[1]);
                         break;
+                    case "cherry-pick":
+                        repo.cherryPick(args[1]);
+                        break;
+                    case "rebase":
+                        repo.rebase(args[1]);
+                        break;
+                    case "stash":
+                        repo.stash(Arrays.copyOfRange(args, 1, args.length));
+                        break;
+                    case "add-remote":
+                        repo.addRemote(args[1], args[2]);
+                        break;
+                    case "rm-remote":
+                        repo.rmRemote(args[1]);
+                        break;
+                    case "fetch":
+                        repo.fetch(args[1], args[2]);
+                        break;
+                    case "push":
+                        repo.push(args[1], args[2]);
+                        break;
+                    case "pull":
+                        repo.pull(args[1], args[2]);
+                        break;
+                    case "config":
+                        if (args.length == 2) {
+                            repo.config(args[1]);
+                        } else {
+                            repo.config(args[1], args[2]);
+                        }
+                        break;
+                    case "diff":
+                        repo.diff(Arrays.copyOfRange(args, 1, args.length));
+                        break;
+                    case "watch":
+                        repo.watch();
+                        break;
+                    case "sparse-checkout":
+                        repo.sparseCheckout(Arrays.copyOfRange(args, 1, args.length));
+                        break;
+                    case "blame":
+                        repo.blame(args[1]);
+                        break;
+                    case "count-objects":
+                        repo.countObjects();
+                        break;
                     default:
                         System.out.println("No command with that name exists.");
                         break;
@@ -0,0 +1,201 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A line-by-line three-way merge of two versions of a file against the
+ *  version they both started from, in the manner of diff3.
+ *
+ *  Each side is diffed against the base.  Changes made by only one side
+ *  are taken as they are, and so are identical changes made by both.
+ *  Only where the two sides changed overlapping or adjacent lines
+ *  differently is a conflict written, with markers around just those
+ *  lines.
+ */
+class Merge3 {
+
+    /** Largest file, in bytes, that is merged line by line.  Larger files
+     *  are left to a whole-file conflict. */
+    static final long MAX_SIZE = 64L * 1024 * 1024;
+
+    static final String OURS_MARKER = "<<<<<<< HEAD\n";
+    static final String SEPARATOR = "=======\n";
+    static final String THEIRS_MARKER = ">>>>>>>\n";
+
+    private final Lines base;
+    private final Lines ours;
+    private final Lines theirs;
+    private final int[][] numbers;
+    private final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    private final List<Conflict> conflicts = new ArrayList<>();
+
+    /** A region the two sides changed differently. */
+    static class Conflict {
+        /** Offsets of the region, markers included, in the result. */
+        final int start;
+        final int end;
+        /** The lines of each side, without markers. */
+        final byte[] ours;
+        final byte[] theirs;
+
+        Conflict(int start, int end, byte[] ours, byte[] theirs) {
+            this.start = start;
+            this.end = end;
+            this.ours = ours;
+            this.theirs = theirs;
+        }
+
+        /** Returns a hash of the two sides that is the same whichever side
+         *  is ours, so the same conflict met from either branch matches. */
+        String key() {
+            boolean swap = Arrays.compare(ours, theirs) > 0;
+            return Utils.sha1(swap ? theirs : ours, "\0", swap ? ours : theirs);
+        }
+    }
+
+    private Merge3(Lines base, Lines ours, Lines theirs) {
+        this.base = base;
+        this.ours = ours;
+        this.theirs = theirs;
+        this.numbers = Lines.number(base, ours, theirs);
+    }
+
+    /** Returns the merge of OURS and THEIRS against BASE. */
+    static Merge3 merge(Lines base, Lines ours, Lines theirs) {
+        Merge3 merge = new Merge3(base, ours, theirs);
+        try {
+            merge.run();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return merge;
+    }
+
+    /** Returns the merge of blobs OURSID and THEIRSID of BLOBS against
+     *  blob BASEID, where a null BASEID stands for an empty file.  Returns
+     *  null if either side is binary or too large to merge by lines. */
+    static Merge3 merge(BlobStore blobs, String baseId, String oursId, String theirsId) {
+        if (blobs.size(oursId) > MAX_SIZE || blobs.size(theirsId) > MAX_SIZE
+                || (baseId != null && blobs.size(baseId) > MAX_SIZE)) {
+            return null;
+        }
+        Lines ours = Lines.read(blobs.open(oursId));
+        Lines theirs = Lines.read(blobs.open(theirsId));
+        Lines base = baseId == null ? Lines.empty() : Lines.read(blobs.open(baseId));
+        if (ours.isBinary() || theirs.isBinary() || base.isBinary()) {
+            return null;
+        }
+        return merge(base, ours, theirs);
+    }
+
+    /** Returns true iff the two sides made conflicting changes. */
+    boolean hasConflicts() {
+        return !conflicts.isEmpty();
+    }
+
+    /** Returns the conflicting regions, in order. */
+    List<Conflict> conflicts() {
+        return conflicts;
+    }
+
+    /** Returns the merged file, including markers around any conflicts. */
+    byte[] result() {
+        return result.toByteArray();
+    }
+
+    private void run() throws IOException {
+        List<Diff.Hunk> oursHunks = Diff.compute(numbers[0], numbers[1]);
+        List<Diff.Hunk> theirsHunks = Diff.compute(numbers[0], numbers[2]);
+        int i = 0;
+        int j = 0;
+        int done = 0;
+        int oursOffset = 0;
+        int theirsOffset = 0;
+        while (i < oursHunks.size() || j < theirsHunks.size()) {
+            int start;
+            if (j >= theirsHunks.size()
+                    || (i < oursHunks.size() && oursHunks.get(i).aStart <= theirsHunks.get(j).aStart)) {
+                start = oursHunks.get(i).aStart;
+            } else {
+                start = theirsHunks.get(j).aStart;
+            }
+            int oursStart = start + oursOffset;
+            int theirsStart = start + theirsOffset;
+            int end = start;
+            boolean oursChanged = false;
+            boolean theirsChanged = false;
+            while (true) {
+                if (i < oursHunks.size() && oursHunks.get(i).aStart <= end) {
+                    Diff.Hunk hunk = oursHunks.get(i++);
+                    end = Math.max(end, hunk.aEnd);
+                    oursOffset = hunk.bEnd - hunk.aEnd;
+                    oursChanged = true;
+                } else if (j < theirsHunks.size() && theirsHunks.get(j).aStart <= end) {
+                    Diff.Hunk hunk = theirsHunks.get(j++);
+                    end = Math.max(end, hunk.aEnd);
+                    theirsOffset = hunk.bEnd - hunk.aEnd;
+                    theirsChanged = true;
+                } else {
+                    break;
+                }
+            }
+            int oursEnd = end + oursOffset;
+            int theirsEnd = end + theirsOffset;
+
+            base.write(result, done, start);
+            if (!theirsChanged) {
+                ours.write(result, oursStart, oursEnd);
+            } else if (!oursChanged || same(oursStart, oursEnd, theirsStart, theirsEnd)) {
+                theirs.write(result, theirsStart, theirsEnd);
+            } else {
+                ByteArrayOutputStream oursText = new ByteArrayOutputStream();
+                ByteArrayOutputStream theirsText = new ByteArrayOutputStream();
+                writeSide(oursText, ours, oursStart, oursEnd);
+                writeSide(theirsText, theirs, theirsStart, theirsEnd);
+                int conflictStart = result.size();
+                writeText(result, OURS_MARKER);
+                oursText.writeTo(result);
+                writeText(result, SEPARATOR);
+                theirsText.writeTo(result);
+                writeText(result, THEIRS_MARKER);
+                conflicts.add(new Conflict(conflictStart, result.size(),
+                        oursText.toByteArray(), theirsText.toByteArray()));
+            }
+            done = end;
+        }
+        base.write(result, done, base.size());
+    }
+
+    /** Returns true iff lines [OURSSTART, OURSEND) of ours equal lines
+     *  [THEIRSSTART, THEIRSEND) of theirs. */
+    private boolean same(int oursStart, int oursEnd, int theirsStart, int theirsEnd) {
+        if (oursEnd - oursStart != theirsEnd - theirsStart) {
+            return false;
+        }
+        for (int k = 0; k < oursEnd - oursStart; k++) {
+            if (numbers[1][oursStart + k] != numbers[2][theirsStart + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes lines [FROM, TO) of SIDE to OUT for a conflict, ending them
+     *  with a newline so that the next marker starts a line of its own. */
+    private static void writeSide(OutputStream out, Lines side, int from, int to)
+            throws IOException {
+        side.write(out, from, to);
+        if (to > from && !side.endsWithNewline(to - 1)) {
+            out.write('\n');
+        }
+    }
+
+    private static void writeText(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
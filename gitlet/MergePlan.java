@@ -0,0 +1,256 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/** What merging one commit into another does to each file, worked out
+ *  before anything is written.
+ *
+ *  Files are classified by comparing their blob ids in the split point
+ *  and the two commits, which needs no blob to be read.  Files changed on
+ *  both sides are then merged line by line in memory, and each result is
+ *  saved as a blob as soon as it is made, so that a plan holds only blob
+ *  ids.  Neither step changes the working tree, so when there are many
+ *  files they run in parallel on the common fork/join pool, with the
+ *  total size of the files being merged at once kept under MERGE_BUDGET;
+ *  the caller then applies the resulting actions in one pass.  In a
+ *  partial clone, the blobs either step may read are fetched beforehand
+ *  in one batch.
+ */
+class MergePlan {
+
+    /** Fewest files worth classifying in parallel. */
+    static final int PARALLEL_THRESHOLD = 16;
+
+    /** Most KiB of blobs merged at the same time: enough for one merge
+     *  of three files of the largest size Merge3 will merge. */
+    static final int MERGE_BUDGET = (int) (3 * Merge3.MAX_SIZE / 1024);
+
+    /** Check out the given commit's version of the file and stage it. */
+    static final int TAKE = 0;
+    /** Delete the file and stage its removal. */
+    static final int REMOVE = 1;
+    /** Check out the cleanly merged contents and stage them. */
+    static final int MERGED = 2;
+    /** Write the file with conflict markers, leaving it unstaged. */
+    static final int CONFLICT = 3;
+
+    /** One thing to do to one file. */
+    static class Action {
+        final String filename;
+        final int kind;
+        /** For TAKE and MERGED, the blob to check out.  For CONFLICT, the
+         *  blob of the file with conflict markers, or null for a whole-file
+         *  conflict. */
+        final String blobId;
+        /** The versions in the current and given commits, null if absent. */
+        final String currentId;
+        final String givenId;
+        /** The conflicts settled by recorded resolutions, if any were looked up. */
+        final Rerere.Resolution resolution;
+
+        Action(String filename, int kind, String blobId, String currentId, String givenId,
+               Rerere.Resolution resolution) {
+            this.filename = filename;
+            this.kind = kind;
+            this.blobId = blobId;
+            this.currentId = currentId;
+            this.givenId = givenId;
+            this.resolution = resolution;
+        }
+    }
+
+    /** A file to classify, with its versions in the split point and in the
+     *  two commits.  If FORCE, the versions are merged regardless. */
+    private static class Item {
+        final String filename;
+        final String splitId;
+        final String currentId;
+        final String givenId;
+        final boolean force;
+
+        Item(String filename, String splitId, String currentId, String givenId, boolean force) {
+            this.filename = filename;
+            this.splitId = splitId;
+            this.currentId = currentId;
+            this.givenId = givenId;
+            this.force = force;
+        }
+    }
+
+    private final BlobStore blobs;
+    private final Rerere rerere;
+    private final Semaphore budget = new Semaphore(MERGE_BUDGET);
+    private final List<Action> actions = new ArrayList<>();
+
+    /** Plans the merge of GIVEN into CURRENT, whose latest common ancestor
+     *  is SPLIT, with blobs in BLOBS.  RENAMES finds files one side renamed
+     *  and the other edited, whose edits are carried to the new name.
+     *  Conflicts with a resolution recorded in RERERE, if not null, are
+     *  resolved with it. */
+    MergePlan(BlobStore blobs, RenameDetector renames, Rerere rerere, Commit split,
+              Commit current, Commit given) {
+        this.blobs = blobs;
+        this.rerere = rerere;
+        Map<String, String> splitTree = split.getTracking();
+        Map<String, String> currentTree = current.getTracking();
+        Map<String, String> givenTree = given.getTracking();
+        List<Item> items = new ArrayList<>();
+        Set<String> handled = new HashSet<>();
+        for (RenameDetector.Rename rename : renames(renames, splitTree, givenTree)) {
+            String oldName = rename.oldName;
+            String newName = rename.newName;
+            if (currentTree.containsKey(oldName) && !currentTree.containsKey(newName)
+                    && !Objects.equals(splitTree.get(oldName), currentTree.get(oldName))) {
+                handled.add(oldName);
+                handled.add(newName);
+                items.add(new Item(newName, splitTree.get(oldName), currentTree.get(oldName),
+                        givenTree.get(newName), true));
+                actions.add(new Action(oldName, REMOVE, null, currentTree.get(oldName), null, null));
+            }
+        }
+        for (RenameDetector.Rename rename : renames(renames, splitTree, currentTree)) {
+            String oldName = rename.oldName;
+            String newName = rename.newName;
+            if (givenTree.containsKey(oldName) && !givenTree.containsKey(newName)
+                    && !Objects.equals(splitTree.get(oldName), givenTree.get(oldName))
+                    && !handled.contains(newName)) {
+                handled.add(oldName);
+                handled.add(newName);
+                items.add(new Item(newName, splitTree.get(oldName), currentTree.get(newName),
+                        givenTree.get(oldName), true));
+            }
+        }
+        TreeSet<String> names = new TreeSet<>(splitTree.keySet());
+        names.addAll(currentTree.keySet());
+        names.addAll(givenTree.keySet());
+        names.removeAll(handled);
+        for (String name : names) {
+            items.add(new Item(name, splitTree.get(name), currentTree.get(name),
+                    givenTree.get(name), false));
+        }
+        List<String> needed = new ArrayList<>();
+        for (Item item : items) {
+            if (item.force || !Objects.equals(item.currentId, item.givenId)) {
+                needed.add(item.givenId);
+                if (item.force || !Objects.equals(item.splitId, item.currentId)) {
+                    needed.add(item.splitId);
+                    needed.add(item.currentId);
+                }
+            }
+        }
+        blobs.prefetch(needed);
+        if (items.size() >= PARALLEL_THRESHOLD) {
+            actions.addAll(items.parallelStream().map(this::classify)
+                    .filter(Objects::nonNull).collect(Collectors.toList()));
+        } else {
+            for (Item item : items) {
+                Action action = classify(item);
+                if (action != null) {
+                    actions.add(action);
+                }
+            }
+        }
+        actions.sort(Comparator.comparing(action -> action.filename));
+    }
+
+    /** Returns the actions, in file-name order. */
+    List<Action> actions() {
+        return actions;
+    }
+
+    /** Returns true iff applying this plan leaves conflicts. */
+    boolean hasConflicts() {
+        for (Action action : actions) {
+            if (action.kind == CONFLICT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the action for ITEM, or null if the file stays as it is
+     *  in the current commit. */
+    private Action classify(Item item) {
+        String splitId = item.splitId;
+        String currentId = item.currentId;
+        String givenId = item.givenId;
+        boolean currentModified = splitId != null && !splitId.equals(currentId);
+        boolean givenModified = splitId != null && !splitId.equals(givenId);
+        if (item.force
+                || (currentModified && givenModified && !Objects.equals(currentId, givenId))
+                || (splitId == null && currentId != null && givenId != null
+                    && !currentId.equals(givenId))) {
+            return merge(item.filename, splitId, currentId, givenId);
+        } else if (!currentModified && givenModified) {
+            if (givenId == null) {
+                return new Action(item.filename, REMOVE, null, currentId, null, null);
+            }
+            return new Action(item.filename, TAKE, givenId, currentId, givenId, null);
+        } else if (splitId == null && currentId == null && givenId != null) {
+            return new Action(item.filename, TAKE, givenId, null, givenId, null);
+        }
+        return null;
+    }
+
+    /** Returns the action that merges CURRENTID and GIVENID, two versions
+     *  of FILENAME that both changed blob SPLITID, line by line.  Files
+     *  deleted on one side, and binary or very large files, get a
+     *  whole-file conflict.  Conflicts resolved before are resolved the
+     *  same way again.  Waits until the files being merged at the same
+     *  time leave room in the budget for these three. */
+    private Action merge(String filename, String splitId, String currentId, String givenId) {
+        if (currentId == null || givenId == null) {
+            return new Action(filename, CONFLICT, null, currentId, givenId, null);
+        }
+        long size = blobs.size(currentId) + blobs.size(givenId)
+                + (splitId == null ? 0 : blobs.size(splitId));
+        int cost = (int) Math.min(MERGE_BUDGET, size / 1024 + 1);
+        budget.acquireUninterruptibly(cost);
+        try {
+            Merge3 merged = Merge3.merge(blobs, splitId, currentId, givenId);
+            if (merged == null) {
+                return new Action(filename, CONFLICT, null, currentId, givenId, null);
+            } else if (!merged.hasConflicts() || rerere == null) {
+                return new Action(filename, merged.hasConflicts() ? CONFLICT : MERGED,
+                        blobs.write(merged.result()), currentId, givenId, null);
+            }
+            Rerere.Resolution resolution = rerere.resolve(merged);
+            return new Action(filename, resolution.remaining > 0 ? CONFLICT : MERGED,
+                    blobs.write(resolution.contents), currentId, givenId, resolution);
+        } finally {
+            budget.release(cost);
+        }
+    }
+
+    /** Returns the files renamed between trees FROM and TO. */
+    private static Collection<RenameDetector.Rename> renames(RenameDetector renames,
+            Map<String, String> from, Map<String, String> to) {
+        HashMap<String, String> deleted = new HashMap<>();
+        HashMap<String, String> created = new HashMap<>();
+        for (Map.Entry<String, String> entry : from.entrySet()) {
+            if (!to.containsKey(entry.getKey())) {
+                deleted.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, String> entry : to.entrySet()) {
+            if (!from.containsKey(entry.getKey())) {
+                created.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (deleted.isEmpty() || created.isEmpty()) {
+            return List.of();
+        }
+        return renames.detect(deleted, created).values();
+    }
+}
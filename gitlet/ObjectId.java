@@ -0,0 +1,235 @@
+package gitlet;
+
+import java.io.Serializable;
+
+/** The id of a commit or blob, held as its raw bytes: 20 of them for a
+ *  SHA-1 repository and 32 for a SHA-256 one.
+ *
+ *  An id kept as its 40-digit hexadecimal String costs well over a
+ *  hundred bytes of heap; an ObjectId is three primitive fields, and a
+ *  Wide one, for the longer hash, two more.  Since the bytes of a hash
+ *  are evenly distributed, its first word serves as the hash code, and
+ *  equality and ordering compare words rather than characters.  Ids are
+ *  ordered as their hexadecimal forms are.
+ */
+class ObjectId implements Comparable<ObjectId>, Serializable {
+
+    /** Number of bytes in a SHA-1 id. */
+    static final int LENGTH = 20;
+    /** Number of bytes in a SHA-256 id. */
+    static final int WIDE_LENGTH = 32;
+
+    /** Bytes 0-7, 8-15 and 16-19 of the id, most significant first. */
+    private final long w0;
+    private final long w1;
+    private final int w2;
+
+    private ObjectId(long w0, long w1, int w2) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+    }
+
+    /** Returns the id whose bytes are BYTES[OFFSET .. OFFSET+SIZE-1],
+     *  SIZE being LENGTH or WIDE_LENGTH. */
+    static ObjectId fromBytes(byte[] bytes, int offset, int size) {
+        long w0 = readBits(bytes, offset, 8);
+        long w1 = readBits(bytes, offset + 8, 8);
+        int w2 = (int) readBits(bytes, offset + 16, 4);
+        if (size == LENGTH) {
+            return new ObjectId(w0, w1, w2);
+        } else if (size == WIDE_LENGTH) {
+            return new Wide(w0, w1, w2, readBits(bytes, offset + 20, 8),
+                    (int) readBits(bytes, offset + 28, 4));
+        }
+        throw new IllegalArgumentException("object ids have 20 or 32 bytes");
+    }
+
+    /** Returns the id written in hexadecimal as HEX, which must be
+     *  exactly 2 * LENGTH or 2 * WIDE_LENGTH of the ASCII digits 0-9 and
+     *  letters a-f, in either case. */
+    static ObjectId fromHex(String hex) {
+        if (hex.length() != 2 * LENGTH && hex.length() != 2 * WIDE_LENGTH) {
+            throw new IllegalArgumentException("not an object id: " + hex);
+        }
+        long w0 = parseHex(hex, 0, 16);
+        long w1 = parseHex(hex, 16, 16);
+        int w2 = (int) parseHex(hex, 32, 8);
+        if (hex.length() == 2 * LENGTH) {
+            return new ObjectId(w0, w1, w2);
+        }
+        return new Wide(w0, w1, w2, parseHex(hex, 40, 16), (int) parseHex(hex, 56, 8));
+    }
+
+    /** Returns the id written as HEX, or null if HEX is null. */
+    static ObjectId fromHexOrNull(String hex) {
+        return hex == null ? null : fromHex(hex);
+    }
+
+    /** Returns the hexadecimal form of ID, or null if ID is null. */
+    static String toHexOrNull(ObjectId id) {
+        return id == null ? null : id.toHex();
+    }
+
+    /** Returns the number of bytes in this id. */
+    int length() {
+        return LENGTH;
+    }
+
+    /** Returns the lower-case hexadecimal digits of this id. */
+    String toHex() {
+        char[] digits = new char[2 * length()];
+        formatHex(w0, digits, 0, 16);
+        formatHex(w1, digits, 16, 16);
+        formatHex(w2 & 0xffffffffL, digits, 32, 8);
+        formatTail(digits);
+        return new String(digits);
+    }
+
+    /** Writes the digits of the bytes past the first LENGTH into DIGITS. */
+    void formatTail(char[] digits) {
+    }
+
+    /** Stores the bytes of this id into DEST from OFFSET on. */
+    void copyTo(byte[] dest, int offset) {
+        writeBits(w0, dest, offset, 8);
+        writeBits(w1, dest, offset + 8, 8);
+        writeBits(w2, dest, offset + 16, 4);
+    }
+
+    /** Returns the bytes of this id. */
+    byte[] toBytes() {
+        byte[] result = new byte[length()];
+        copyTo(result, 0);
+        return result;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        if (w0 != other.w0) {
+            return Long.compareUnsigned(w0, other.w0);
+        } else if (w1 != other.w1) {
+            return Long.compareUnsigned(w1, other.w1);
+        } else if (w2 != other.w2) {
+            return Integer.compareUnsigned(w2, other.w2);
+        }
+        return compareTail(other);
+    }
+
+    /** Compares the bytes past the first LENGTH of this id and OTHER, a
+     *  shorter id coming first. */
+    int compareTail(ObjectId other) {
+        return other.length() == LENGTH ? 0 : -1;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || obj.getClass() != getClass()) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return w0 == other.w0 && w1 == other.w1 && w2 == other.w2
+                && compareTail(other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (w0 >>> 32);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    /** Writes VALUE as the lower-case hexadecimal digits
+     *  DEST[START .. START+COUNT-1], most significant first. */
+    static void formatHex(long value, char[] dest, int start, int count) {
+        for (int i = start + count - 1; i >= start; i--) {
+            dest[i] = Utils.HEX_DIGITS.charAt((int) value & 0xf);
+            value >>>= 4;
+        }
+    }
+
+    /** Returns the value of the COUNT hexadecimal digits of HEX starting
+     *  at START. */
+    private static long parseHex(String hex, int start, int count) {
+        long result = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = hex.charAt(i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else if (c >= 'A' && c <= 'F') {
+                digit = c - 'A' + 10;
+            } else {
+                throw new IllegalArgumentException("not an object id: " + hex);
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+
+    /** Returns BYTES[OFFSET .. OFFSET+COUNT-1] as a big-endian number. */
+    private static long readBits(byte[] bytes, int offset, int count) {
+        long result = 0;
+        for (int i = offset; i < offset + count; i++) {
+            result = (result << 8) | (bytes[i] & 0xff);
+        }
+        return result;
+    }
+
+    /** Stores the low COUNT bytes of VALUE into DEST from OFFSET on,
+     *  big-endian. */
+    private static void writeBits(long value, byte[] dest, int offset, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            dest[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /** An id of WIDE_LENGTH bytes. */
+    private static final class Wide extends ObjectId {
+        /** Bytes 20-27 and 28-31 of the id. */
+        private final long w3;
+        private final int w4;
+
+        Wide(long w0, long w1, int w2, long w3, int w4) {
+            super(w0, w1, w2);
+            this.w3 = w3;
+            this.w4 = w4;
+        }
+
+        @Override
+        int length() {
+            return WIDE_LENGTH;
+        }
+
+        @Override
+        void formatTail(char[] digits) {
+            formatHex(w3, digits, 40, 16);
+            formatHex(w4 & 0xffffffffL, digits, 56, 8);
+        }
+
+        @Override
+        void copyTo(byte[] dest, int offset) {
+            super.copyTo(dest, offset);
+            writeBits(w3, dest, offset + 20, 8);
+            writeBits(w4, dest, offset + 28, 4);
+        }
+
+        @Override
+        int compareTail(ObjectId obj) {
+            if (!(obj instanceof Wide)) {
+                return 1;
+            }
+            Wide other = (Wide) obj;
+            if (w3 != other.w3) {
+                return Long.compareUnsigned(w3, other.w3);
+            }
+            return Integer.compareUnsigned(w4, other.w4);
+        }
+    }
+}
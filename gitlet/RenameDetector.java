@@ -0,0 +1,247 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Pairs files that disappeared between two trees with files that
+ *  appeared, when the new file is the old one renamed, and files that
+ *  appeared with files that were kept, when the new file is a copy.
+ *
+ *  Files with the same blob id are paired first.  For the rest, each blob
+ *  gets a MinHash sketch of its set of lines, cached by blob id in
+ *  .gitlet/sketches.  The sketches are cut into bands and only files
+ *  sharing a whole band are compared, so a pair of files is only looked
+ *  at if it is likely to be similar, rather than every deleted file being
+ *  compared with every added one.
+ */
+class RenameDetector {
+
+    /** Number of min-hash values in a sketch. */
+    static final int SKETCH_SIZE = 64;
+    /** Number of values per band; SKETCH_SIZE / BAND_ROWS bands in all. */
+    static final int BAND_ROWS = 4;
+    /** Least estimated similarity, in percent, for a pair to be a rename. */
+    static final int MIN_SIMILARITY = 50;
+
+    /** A file renamed, or copied, from oldName to newName. */
+    static class Rename {
+        final String oldName;
+        final String newName;
+        /** Estimated percentage of lines the two versions share. */
+        final int similarity;
+        /** True iff oldName was kept, so that newName is a copy of it. */
+        final boolean copy;
+
+        Rename(String oldName, String newName, int similarity, boolean copy) {
+            this.oldName = oldName;
+            this.newName = newName;
+            this.similarity = similarity;
+            this.copy = copy;
+        }
+    }
+
+    private final BlobStore blobs;
+    private final File cacheFile;
+    private HashMap<String, long[]> sketches;
+    private boolean dirty;
+
+    RenameDetector(File gitletDir, BlobStore blobs) {
+        this.blobs = blobs;
+        this.cacheFile = Utils.join(gitletDir, "sketches");
+    }
+
+    /** Returns the renames from the files of DELETED to those of ADDED,
+     *  both maps from file name to blob id, keyed by new file name. */
+    Map<String, Rename> detect(Map<String, String> deleted, Map<String, String> added) {
+        TreeMap<String, Rename> renames = new TreeMap<>();
+        HashMap<String, List<String>> addedByBlob = new HashMap<>();
+        for (Map.Entry<String, String> entry : new TreeMap<>(added).entrySet()) {
+            addedByBlob.computeIfAbsent(entry.getValue(), k -> new ArrayList<>()).add(entry.getKey());
+        }
+        List<String> unmatched = new ArrayList<>();
+        for (Map.Entry<String, String> entry : new TreeMap<>(deleted).entrySet()) {
+            List<String> same = addedByBlob.get(entry.getValue());
+            if (same != null && !same.isEmpty()) {
+                String newName = same.remove(0);
+                renames.put(newName, new Rename(entry.getKey(), newName, 100, false));
+            } else {
+                unmatched.add(entry.getKey());
+            }
+        }
+        List<String> candidates = new ArrayList<>();
+        for (String name : new TreeMap<>(added).keySet()) {
+            if (!renames.containsKey(name)) {
+                candidates.add(name);
+            }
+        }
+        if (!unmatched.isEmpty() && !candidates.isEmpty()) {
+            findSimilar(unmatched, deleted, candidates, added, renames, false);
+        }
+        return renames;
+    }
+
+    /** Returns the copies among the files of ADDED from those of KEPT,
+     *  both maps from file name to blob id, keyed by new file name.  As
+     *  with git's -C, any kept file is a source for an exact copy, but
+     *  only those in CHANGED, the kept files whose contents changed too,
+     *  are compared for similar ones, since sketching every file of the
+     *  tree would cost more than the diff. */
+    Map<String, Rename> detectCopies(Map<String, String> kept, Set<String> changed,
+                                     Map<String, String> added) {
+        TreeMap<String, Rename> copies = new TreeMap<>();
+        HashMap<String, String> keptByBlob = new HashMap<>();
+        for (Map.Entry<String, String> entry : new TreeMap<>(kept).entrySet()) {
+            keptByBlob.putIfAbsent(entry.getValue(), entry.getKey());
+        }
+        List<String> candidates = new ArrayList<>();
+        for (Map.Entry<String, String> entry : new TreeMap<>(added).entrySet()) {
+            String source = keptByBlob.get(entry.getValue());
+            if (source != null) {
+                copies.put(entry.getKey(), new Rename(source, entry.getKey(), 100, true));
+            } else {
+                candidates.add(entry.getKey());
+            }
+        }
+        if (!changed.isEmpty() && !candidates.isEmpty()) {
+            findSimilar(new ArrayList<>(new TreeSet<>(changed)), kept, candidates, added,
+                    copies, true);
+        }
+        return copies;
+    }
+
+    /** Adds to RENAMES the best pairings of OLDNAMES, whose blobs are in
+     *  OLDTREE, with NEWNAMES, whose blobs are in NEWTREE.  If COPY, an
+     *  old file may be paired with any number of new ones, and the pairs
+     *  are copies rather than renames. */
+    private void findSimilar(List<String> oldNames, Map<String, String> oldTree,
+                             List<String> newNames, Map<String, String> newTree,
+                             Map<String, Rename> renames, boolean copy) {
+        HashMap<Long, List<String>> buckets = new HashMap<>();
+        for (String name : newNames) {
+            long[] sketch = sketch(newTree.get(name));
+            if (sketch == null) {
+                continue;
+            }
+            for (int band = 0; band < SKETCH_SIZE / BAND_ROWS; band++) {
+                buckets.computeIfAbsent(bandKey(sketch, band), k -> new ArrayList<>()).add(name);
+            }
+        }
+        List<Rename> pairs = new ArrayList<>();
+        for (String oldName : oldNames) {
+            long[] sketch = sketch(oldTree.get(oldName));
+            if (sketch == null) {
+                continue;
+            }
+            Set<String> seen = new HashSet<>();
+            for (int band = 0; band < SKETCH_SIZE / BAND_ROWS; band++) {
+                for (String newName : buckets.getOrDefault(bandKey(sketch, band), List.of())) {
+                    if (seen.add(newName)) {
+                        int similarity = similarity(sketch, sketch(newTree.get(newName)));
+                        if (similarity >= MIN_SIMILARITY) {
+                            pairs.add(new Rename(oldName, newName, similarity, copy));
+                        }
+                    }
+                }
+            }
+        }
+        pairs.sort((x, y) -> x.similarity != y.similarity ? y.similarity - x.similarity
+                : !x.newName.equals(y.newName) ? x.newName.compareTo(y.newName)
+                : x.oldName.compareTo(y.oldName));
+        Set<String> usedOld = new HashSet<>();
+        for (Rename pair : pairs) {
+            if (!renames.containsKey(pair.newName) && !usedOld.contains(pair.oldName)) {
+                renames.put(pair.newName, pair);
+                if (!copy) {
+                    usedOld.add(pair.oldName);
+                }
+            }
+        }
+    }
+
+    /** Returns the MinHash sketch of blob ID, or null if it is empty,
+     *  binary or too large to read into memory. */
+    long[] sketch(String id) {
+        if (sketches == null) {
+            sketches = cacheFile.isFile() ? Utils.readObject(cacheFile, HashMap.class) : new HashMap<>();
+        }
+        if (sketches.containsKey(id)) {
+            return sketches.get(id);
+        }
+        long[] sketch = null;
+        if (blobs.size(id) > Merge3.MAX_SIZE) {
+            sketches.put(id, sketch);
+            dirty = true;
+            return sketch;
+        }
+        Lines lines;
+        try (InputStream in = blobs.open(id)) {
+            lines = Lines.read(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        if (lines.size() > 0 && !lines.isBinary()) {
+            sketch = new long[SKETCH_SIZE];
+            Arrays.fill(sketch, Long.MAX_VALUE);
+            for (int i = 0; i < lines.size(); i++) {
+                long hash = lines.hash(i);
+                for (int k = 0; k < SKETCH_SIZE; k++) {
+                    long value = mix(hash + k * 0x9e3779b97f4a7c15L);
+                    if (value < sketch[k]) {
+                        sketch[k] = value;
+                    }
+                }
+            }
+        }
+        sketches.put(id, sketch);
+        dirty = true;
+        return sketch;
+    }
+
+    /** Writes newly computed sketches back to the cache. */
+    void save() {
+        if (dirty) {
+            Utils.writeObject(cacheFile, sketches);
+            dirty = false;
+        }
+    }
+
+    /** Returns the estimated percentage of lines shared by the files with
+     *  sketches A and B. */
+    static int similarity(long[] a, long[] b) {
+        if (a == null || b == null) {
+            return 0;
+        }
+        int same = 0;
+        for (int k = 0; k < SKETCH_SIZE; k++) {
+            if (a[k] == b[k]) {
+                same++;
+            }
+        }
+        return 100 * same / SKETCH_SIZE;
+    }
+
+    private static long bandKey(long[] sketch, int band) {
+        long key = band;
+        for (int k = band * BAND_ROWS; k < (band + 1) * BAND_ROWS; k++) {
+            key = mix(key * 31 + sketch[k]);
+        }
+        return key;
+    }
+
+    /** The finalizer of SplitMix64, which scrambles every bit of X. */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+}
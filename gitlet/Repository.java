@@ -1,5 +1,11 @@
 package gitlet;
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 /** Represents a gitlet repository.
@@ -14,40 +20,67 @@ public class Repository {
     public static final File COMMIT_DIR = Utils.join(GITLET_DIR, "commits");
     public static final File BLOB_DIR = Utils.join(GITLET_DIR, "blobs");
     public static final File STAGE_DIR = Utils.join(GITLET_DIR, "stages");
-    public static final int MAX_PREFIX_LENGTH = 40;
+    public static final int MAX_PREFIX_LENGTH = 2 * ObjectId.WIDE_LENGTH;
 
-    HashMap<String, byte[]> added;
+    HashMap<String, String> added; // filename: blobhash
     HashMap<String, String> removed;
     HashMap<String, String> branches;
+    HashMap<String, String> config;
+    BlobStore blobs = new BlobStore(GITLET_DIR);
 
     private String head;
+    private CommitGraph graph;
+    private StatCache stats;
+    private Set<String> shallow;
+    private SparseCheckout sparse;
+    private FsMonitor monitor;
+    private UntrackedCache untracked;
 
     public Repository() {
         if (!GITLET_DIR.exists()) {
             added = new HashMap<>();
             removed = new HashMap<>();
             branches = new HashMap<>();
+            config = new HashMap<>();
         } else {
             added = Utils.readObject(Utils.join(STAGE_DIR, "added"), HashMap.class);
             removed  = Utils.readObject(Utils.join(STAGE_DIR, "removed"), HashMap.class);
             branches = Utils.readObject(Utils.join(GITLET_DIR, "branches"), HashMap.class);
             head = branches.get(branches.get("current"));
+            File configFile = Utils.join(GITLET_DIR, "config");
+            config = configFile.exists() ? Utils.readObject(configFile, HashMap.class) : new HashMap<>();
         }
+        blobs.setChunking("true".equals(config.get("chunking")));
     }
 
-    public void init() {
+    /** Creates a repository in the current directory.  ARGS may hold
+     *  "--hash=NAME", naming the HashAlgorithm for its ids; it is SHA-1
+     *  otherwise. */
+    public void init(String... args) {
         if (!GITLET_DIR.exists()) {
+            String hash = HashAlgorithm.SHA1;
+            for (String arg : args) {
+                if (!arg.startsWith("--hash=")) {
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+                hash = arg.substring("--hash=".length());
+            }
+            HashAlgorithm algorithm = HashAlgorithm.named(hash);
             GITLET_DIR.mkdirs();
             COMMIT_DIR.mkdirs();
             BLOB_DIR.mkdirs();
             STAGE_DIR.mkdirs();
+            config.put(HashAlgorithm.CONFIG_KEY, algorithm.name());
+            Utils.writeObject(Utils.join(GITLET_DIR, "config"), config);
 
             Commit initialCommit = new Commit(
                     "initial commit",
                     null,
                     new HashMap<String, String>(),
                     new HashMap<String, String>(),
-                    null
+                    null,
+                    algorithm
             );
 
             head = initialCommit.getHash();
@@ -65,7 +98,10 @@ public class Repository {
     }
 
     public void add(String filename) {
-        if (!Utils.join(CWD, filename).exists()) {
+        if (filename.equals(".")) {
+            addAll();
+            return;
+        } else if (!Utils.join(CWD, filename).exists()) {
             System.out.println("File does not exist.");
             return;
         } else if (removed.containsKey(filename)) {
@@ -73,18 +109,91 @@ public class Repository {
             Utils.writeObject(Utils.join(STAGE_DIR, "removed"), removed);
         }
 
-        byte[] blob = Utils.readContents(Utils.join(CWD, filename));
+        File file = Utils.join(CWD, filename);
+        String blobHash = blobs.write(file);
+        getStats().record(filename, file, blobHash);
+        getStats().save();
 
-        if (Utils.getCommit(head).containsFile(filename)) {
-            byte[] fileFromCommit = Utils.getCommit(head).getFile(filename);
-            if (Arrays.equals(blob, fileFromCommit)) {
-                added.remove(filename);
-                Utils.writeObject(Utils.join(STAGE_DIR, "added"), added);
-                return;
+        if (blobHash.equals(Utils.getCommit(head).getBlobId(filename))) {
+            added.remove(filename);
+            Utils.writeObject(Utils.join(STAGE_DIR, "added"), added);
+            return;
+        }
+        added.put(filename, blobHash);
+        Utils.writeObject(Utils.join(STAGE_DIR, "added"), added);
+    }
+
+    /** Stages every change in the working tree: new and modified files
+     *  are added, and deleted tracked files removed.  Untracked files
+     *  that .gitletignore files exclude are left alone.  With a watcher
+     *  running, only the paths changed since they were last examined are
+     *  looked at; otherwise the whole working tree is. */
+    private void addAll() {
+        Set<String> changed = getMonitor().changed();
+        TreeMap<String, String> tracked = new TreeMap<>(Utils.getCommit(head).getTracking());
+        TreeSet<String> candidates = new TreeSet<>();
+        if (changed == null) {
+            candidates.addAll(getUntracked().files());
+            candidates.addAll(tracked.keySet());
+            candidates.addAll(added.keySet());
+        } else {
+            for (String path : new ArrayList<>(changed)) {
+                File file = Utils.join(CWD, path);
+                if (file.isDirectory()) {
+                    candidates.addAll(getUntracked().files(path));
+                } else {
+                    candidates.add(path);
+                    candidates.addAll(tracked.subMap(path + "/", path + "0").keySet());
+                }
+                getMonitor().examined(path);
             }
         }
-        added.put(filename, blob);
+        IgnoreRules ignore = new IgnoreRules(CWD);
+        for (String filename : candidates) {
+            if (getSparse().matches(filename) && (tracked.containsKey(filename)
+                    || added.containsKey(filename) || !ignore.ignored(filename, false))) {
+                stageChange(filename, tracked.get(filename));
+            }
+            getMonitor().examined(filename);
+        }
+        if (changed == null) {
+            getMonitor().scanned();
+        }
+        getMonitor().save();
+        getStats().save();
+        getUntracked().save();
         Utils.writeObject(Utils.join(STAGE_DIR, "added"), added);
+        Utils.writeObject(Utils.join(STAGE_DIR, "removed"), removed);
+    }
+
+    /** Stages the working-tree copy of FILENAME, which is blob HEADBLOB in
+     *  the head commit, or stages its removal if it is gone. */
+    private void stageChange(String filename, String headBlob) {
+        File file = Utils.join(CWD, filename);
+        String blobHash = getStats().blobId(filename, file);
+        if (blobHash == null) {
+            added.remove(filename);
+            if (headBlob != null) {
+                removed.put(filename, headBlob);
+            }
+        } else {
+            removed.remove(filename);
+            if (blobHash.equals(headBlob)) {
+                added.remove(filename);
+            } else if (!blobHash.equals(added.get(filename))) {
+                added.put(filename, blobs.contains(blobHash) ? blobHash : blobs.write(file));
+            }
+        }
+    }
+
+    /** Watches the working tree for changes until stopped, so that later
+     *  commands only need to examine the files that changed. */
+    public void watch() {
+        try {
+            FsMonitor.watch(CWD);
+        } catch (IOException excp) {
+            throw Utils.error("%s", "Cannot watch the working tree: " + excp.getMessage());
+        }
     }
 
     public void commit(String message, String secondParent) {
@@ -92,16 +201,13 @@ public class Repository {
             System.out.println("No changes added to the commit.");
         }
 
-        HashMap<String, String> addedPointers = new HashMap<>();
-
-        for (String filename : added.keySet()) {
-            byte[] blob = added.get(filename);
-            String blobHash = Utils.sha1(blob);
-            Utils.writeContents(Utils.join(BLOB_DIR, blobHash), blob);
-            addedPointers.put(filename, blobHash);
+        Rerere rerere = rerere();
+        if (rerere != null) {
+            rerere.record(added, blobs);
+            rerere.save();
         }
-
-        Commit newCommit = new Commit(message, head, addedPointers, removed, secondParent);
+        Commit newCommit = new Commit(message, head, added, removed, secondParent,
+                blobs.algorithm());
 
         String newHash = newCommit.getHash();
         Utils.writeObject(Utils.join(COMMIT_DIR, newHash), newCommit);
@@ -140,7 +246,7 @@ public class Repository {
             System.out.println(curr.getMessage());
             System.out.println();
 
-            curr = Utils.getCommit(curr.getParent());
+            curr = parentOf(curr);
         }
     }
 
@@ -196,7 +302,7 @@ public class Repository {
     public void restore(String filename) {
         Commit curr = Utils.getCommit(head);
         if (curr.containsFile(filename)) {
-            Utils.writeContents(Utils.join(CWD, filename), curr.getFile(filename));
+            restoreFile(filename, curr.getBlobId(filename));
         } else {
             System.out.println("File does not exist in that commit.");
         }
@@ -206,8 +312,8 @@ public class Repository {
         List<String> cwd = Utils.plainFilenamesIn(COMMIT_DIR);
         if (isPrefix(commitHash, cwd)) {
             Commit curr = Utils.getCommit(findStringWithPrefix(commitHash, cwd));
-            if (curr.getTracking().containsKey(filename)) {
-                Utils.writeContents(Utils.join(CWD, filename), curr.getFile(filename));
+            if (curr.containsFile(filename)) {
+                restoreFile(filename, curr.getBlobId(filename));
             } else {
                 System.out.println("File does not exist in that commit.");
             }
@@ -216,6 +322,323 @@ public class Repository {
         }
     }
 
+    /** Prints the value of configuration setting KEY, if it is set. */
+    public void config(String key) {
+        if (config.containsKey(key)) {
+            System.out.println(config.get(key));
+        }
+    }
+
+    /** Sets configuration setting KEY to VALUE.  Setting "chunking" to
+     *  "true" stores large files added from then on as deduplicated chunks. */
+    public void config(String key, String value) {
+        if (key.equals(HashAlgorithm.CONFIG_KEY)) {
+            System.out.println("The hash algorithm of a repository cannot be changed.");
+            return;
+        }
+        config.put(key, value);
+        Utils.writeObject(Utils.join(GITLET_DIR, "config"), config);
+    }
+
+    /** Prints how many blobs and chunks are stored and how much space
+     *  chunking saves. */
+    public void countObjects() {
+        for (String line : blobs.dedupReport()) {
+            System.out.println(line);
+        }
+    }
+
+    private void restoreFile(String filename, String blobId) {
+        Checkout checkout = new Checkout(CWD, blobs, getStats());
+        checkout.write(filename, blobId);
+        checkout.run();
+        getStats().save();
+    }
+
+    /** Prints the changes between two sets of files as a unified diff.
+     *  With no commit ids, compares the stage with the working tree; with
+     *  --staged, the head commit with the stage; and with two commit ids,
+     *  the first commit with the second.  With --stat, prints the number
+     *  of changed lines per file instead. */
+    public void diff(String... args) {
+        boolean stat = false;
+        boolean staged = false;
+        List<String> commits = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--stat")) {
+                stat = true;
+            } else if (arg.equals("--staged")) {
+                staged = true;
+            } else {
+                commits.add(arg);
+            }
+        }
+        Map<String, String> oldTree;
+        Map<String, String> newTree;
+        File workTree = null;
+        if (commits.size() == 2 && !staged) {
+            List<String> commitHashes = Utils.plainFilenamesIn(COMMIT_DIR);
+            String first = findStringWithPrefix(commits.get(0), commitHashes);
+            String second = findStringWithPrefix(commits.get(1), commitHashes);
+            if (first == null || second == null) {
+                System.out.println("No commit with that id exists.");
+                return;
+            }
+            oldTree = Utils.getCommit(first).getTracking();
+            newTree = Utils.getCommit(second).getTracking();
+        } else if (!commits.isEmpty()) {
+            System.out.println("Incorrect operands.");
+            return;
+        } else if (staged) {
+            oldTree = Utils.getCommit(head).getTracking();
+            newTree = stageTree();
+        } else {
+            oldTree = stageTree();
+            newTree = workTree(oldTree.keySet());
+            workTree = CWD;
+        }
+        RenameDetector renames = workTree == null ? new RenameDetector(GITLET_DIR, blobs) : null;
+        TreeDiff diff = new TreeDiff(blobs, oldTree, newTree, workTree, renames);
+        if (renames != null) {
+            renames.save();
+        }
+        try {
+            if (stat) {
+                if (!diff.isEmpty()) {
+                    diff.writeStat(System.out);
+                }
+            } else {
+                diff.writeUnified(System.out);
+            }
+            System.out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Prints each line of FILENAME as of the head commit, preceded by
+     *  the id and date of the commit that last changed it. */
+    public void blame(String filename) {
+        Commit curr = Utils.getCommit(head);
+        if (!curr.containsFile(filename)) {
+            System.out.println("File does not exist in that commit.");
+            return;
+        }
+        Blame blame = new Blame(GITLET_DIR, blobs);
+        Lines lines = blame.read(curr.getBlobId(filename));
+        if (lines.isBinary()) {
+            System.out.println("Cannot blame a binary file.");
+            return;
+        }
+        Blame.Origins origins = blame.blame(head, filename);
+        HashMap<String, String> dates = new HashMap<>();
+        String format = "%.8s (%s %" + String.valueOf(lines.size()).length() + "d) %s%n";
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            String commit = origins.commit(i);
+            String date = dates.computeIfAbsent(commit, id -> Utils.getCommit(id).getTimestamp());
+            text.append(String.format(format, commit, date, i + 1, lines.line(i)));
+        }
+        System.out.print(text);
+    }
+
+    /** Saves the staged and unstaged changes to tracked files on the stash
+     *  and returns the working tree and stage to the head commit, or, with
+     *  pop, list or drop as the first of ARGS, works on the saved entries. */
+    public void stash(String... args) {
+        String subcommand = args.length == 0 ? "push" : args[0];
+        int index = 0;
+        if (args.length > 1) {
+            String arg = args[1].replaceAll("^stash@\\{(\\d+)}$", "$1");
+            if (!arg.matches("\\d+")) {
+                System.out.println("Incorrect operands.");
+                return;
+            }
+            index = Integer.parseInt(arg);
+        }
+        File stashFile = Utils.join(GITLET_DIR, "stash");
+        ArrayList<String> entries = stashFile.exists()
+                ? Utils.readObject(stashFile, ArrayList.class) : new ArrayList<>();
+        switch (subcommand) {
+            case "push":
+                stashPush(entries);
+                break;
+            case "list":
+                for (int i = 0; i < entries.size(); i++) {
+                    System.out.println("stash@{" + i + "}: " + Utils.getCommit(entries.get(i)).getMessage());
+                }
+                return;
+            case "pop":
+            case "drop":
+                if (index >= entries.size()) {
+                    System.out.println("No stash entries found.");
+                    return;
+                }
+                if (subcommand.equals("pop") && !stashApply(entries.get(index))) {
+                    return;
+                }
+                entries.remove(index);
+                System.out.println("Dropped stash@{" + index + "}.");
+                break;
+            default:
+                System.out.println("Incorrect operands.");
+                return;
+        }
+        Utils.writeObject(stashFile, entries);
+    }
+
+    /** Records the stage and the tracked files of the working tree as two
+     *  commits on top of the head, pushes them on ENTRIES, and checks out
+     *  the head.  Only files that differ from the stage are written to the
+     *  object store; the rest keep the blobs they already have. */
+    private void stashPush(ArrayList<String> entries) {
+        HashMap<String, String> index = stageTree();
+        HashMap<String, String> work = workTree(getSparse().filter(index).keySet());
+        for (Map.Entry<String, String> entry : index.entrySet()) {
+            if (!getSparse().matches(entry.getKey())) {
+                work.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (added.isEmpty() && removed.isEmpty() && work.equals(index)) {
+            System.out.println("No local changes to save.");
+            return;
+        }
+        Commit headCommit = Utils.getCommit(head);
+        Checkout checkout = new Checkout(CWD, blobs, getStats());
+        checkout.check(getSparse().filter(work), getSparse().filter(headCommit.getTracking()));
+        String message = String.format("WIP on %s: %.8s %s", branches.get("current"),
+                head, headCommit.getMessage());
+        TreeBuilder indexTree = new TreeBuilder(blobs, COMMIT_DIR, head);
+        added.forEach(indexTree::put);
+        removed.forEach(indexTree::remove);
+        String indexCommit = indexTree.commit("index on " + message.substring("WIP on ".length()), null);
+        TreeBuilder workTree = new TreeBuilder(blobs, COMMIT_DIR, head);
+        for (Map.Entry<String, String> entry : index.entrySet()) {
+            String filename = entry.getKey();
+            String blobHash = work.get(filename);
+            if (blobHash == null) {
+                workTree.remove(filename, entry.getValue());
+            } else if (!blobHash.equals(entry.getValue())) {
+                workTree.put(filename, blobs.write(Utils.join(CWD, filename)));
+            } else if (!blobHash.equals(headCommit.getBlobId(filename))) {
+                workTree.put(filename, blobHash);
+            }
+        }
+        for (String filename : headCommit.getTracking().keySet()) {
+            if (!index.containsKey(filename)) {
+                workTree.remove(filename, headCommit.getBlobId(filename));
+            }
+        }
+        String workCommit = workTree.commit(message, indexCommit);
+        checkout.apply(getSparse().filter(work), getSparse().filter(headCommit.getTracking()));
+        getStats().save();
+        clearStage();
+        entries.add(0, workCommit);
+        System.out.println("Saved working directory and index state " + message);
+    }
+
+    /** Restores the stash entry whose working-tree commit is STASHID.  If
+     *  the head has not moved since, its files are checked out and its
+     *  stage restored; otherwise its changes are merged into the head.
+     *  Returns false, keeping the entry, if this leaves conflicts.  Throws
+     *  a GitletException, changing nothing, if a tracked file it would
+     *  write has changes of its own in the working tree. */
+    private boolean stashApply(String stashId) {
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return false;
+        }
+        Commit work = Utils.getCommit(stashId);
+        Commit headCommit = Utils.getCommit(head);
+        if (work.getParent().equals(head)) {
+            for (Map.Entry<String, String> entry
+                    : getSparse().filter(headCommit.getTracking()).entrySet()) {
+                checkUnchanged(entry.getKey(), entry.getValue());
+            }
+            checkout(headCommit, work);
+            Commit index = Utils.getCommit(work.getSecondParent());
+            for (Map.Entry<String, String> entry : index.getTracking().entrySet()) {
+                if (!entry.getValue().equals(headCommit.getBlobId(entry.getKey()))) {
+                    added.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (Map.Entry<String, String> entry : headCommit.getTracking().entrySet()) {
+                if (!index.containsFile(entry.getKey())) {
+                    removed.put(entry.getKey(), entry.getValue());
+                }
+            }
+            Utils.writeObject(Utils.join(STAGE_DIR, "added"), added);
+            Utils.writeObject(Utils.join(STAGE_DIR, "removed"), removed);
+            return true;
+        }
+        RenameDetector renames = new RenameDetector(GITLET_DIR, blobs);
+        Rerere rerere = rerere();
+        MergePlan plan = new MergePlan(blobs, renames, rerere, Utils.getCommit(work.getParent()),
+                headCommit, work);
+        renames.save();
+        for (MergePlan.Action action : plan.actions()) {
+            if (action.kind != MergePlan.REMOVE && action.currentId == null
+                    && inWorkTree(action) && Utils.join(CWD, action.filename).exists()) {
+                throw Utils.error("There is an untracked file in the way; "
+                        + "delete it, or add and commit it first.");
+            } else if (action.currentId != null && inWorkTree(action)) {
+                checkUnchanged(action.filename, action.currentId);
+            }
+        }
+        applyPlan(plan, rerere);
+        if (plan.hasConflicts()) {
+            System.out.println("Encountered a merge conflict.");
+            System.out.println("The stash entry is kept in case you need it again.");
+            return false;
+        }
+        return true;
+    }
+
+    /** Throws a GitletException if the working-tree copy of FILENAME is no
+     *  longer blob BLOBID. */
+    private void checkUnchanged(String filename, String blobId) {
+        if (!blobId.equals(getStats().blobId(filename, Utils.join(CWD, filename)))) {
+            getStats().save();
+            throw Utils.error("%s", "Your local changes to " + filename
+                    + " would be overwritten; commit or restore them first.");
+        }
+    }
+
+    /** Returns the files the next commit would hold, by name: those of the
+     *  head commit updated by the stage. */
+    private HashMap<String, String> stageTree() {
+        HashMap<String, String> tree = new HashMap<>(Utils.getCommit(head).getTracking());
+        tree.putAll(added);
+        for (String filename : removed.keySet()) {
+            tree.remove(filename);
+        }
+        return tree;
+    }
+
+    /** Returns the blob ids of those of FILENAMES present in the working
+     *  tree.  With a watcher running, files unchanged since gitlet last
+     *  recorded them are not looked at. */
+    private HashMap<String, String> workTree(Collection<String> filenames) {
+        Set<String> changed = getMonitor().changed();
+        HashMap<String, String> tree = new HashMap<>();
+        for (String filename : filenames) {
+            String blobHash = null;
+            if (changed != null && !changed.contains(filename)) {
+                blobHash = getStats().recorded(filename);
+            }
+            if (blobHash == null) {
+                blobHash = getStats().blobId(filename, Utils.join(CWD, filename));
+                getMonitor().examined(filename);
+            }
+            if (blobHash != null) {
+                tree.put(filename, blobHash);
+            }
+        }
+        getStats().save();
+        getMonitor().save();
+        return tree;
+    }
+
     public void find(String message) {
         List<String> commits = Utils.plainFilenamesIn(COMMIT_DIR);
         int count = 0;
@@ -251,29 +674,67 @@ public class Repository {
 
         Commit currCommit = Utils.getCommit(head);
         Commit branchCommit = Utils.getCommit(branches.get(branchName));
-        List<String> cwdFiles = Utils.plainFilenamesIn(CWD);
+        checkout(currCommit, branchCommit);
 
-        for (String filename : cwdFiles) {
-            if (!currCommit.getTracking().containsKey(filename) && branchCommit.getTracking().containsKey(filename)) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                return;
+        branches.put("current", branchName);
+        Utils.writeObject(Utils.join(GITLET_DIR, "branches"), branches);
+        clearStage();
+    }
+
+    /** Updates the working tree from the files of FROM to those of TO,
+     *  touching only files whose contents differ.  Throws a
+     *  GitletException, leaving the working tree as it was, if an
+     *  untracked file would be overwritten. */
+    private void checkout(Commit from, Commit to) {
+        Checkout checkout = new Checkout(CWD, blobs, getStats());
+        checkout.apply(getSparse().filter(from.getTracking()), getSparse().filter(to.getTracking()));
+        getStats().save();
+    }
+
+    /** Limits the working tree to the paths matching a set of patterns.
+     *  ARGS is "set" or "add" followed by patterns, "list", or "disable".
+     *  Files leaving the set are deleted and files entering it written. */
+    public void sparseCheckout(String[] args) {
+        SparseCheckout after = new SparseCheckout(GITLET_DIR);
+        String action = args.length == 0 ? "" : args[0];
+        if (action.equals("list") && args.length == 1) {
+            for (String pattern : after.patterns()) {
+                System.out.println(pattern);
+            }
+            return;
+        } else if ((action.equals("set") || action.equals("add")) && args.length > 1) {
+            if (action.equals("set")) {
+                after.clear();
+            }
+            for (int i = 1; i < args.length; i++) {
+                after.add(args[i]);
             }
+        } else if (action.equals("disable") && args.length == 1) {
+            after.clear();
+        } else {
+            System.out.println("Incorrect operands.");
+            return;
         }
-
-        for (String filename : branchCommit.getTracking().keySet()) {
-            Utils.writeContents(Utils.join(CWD, filename), branchCommit.getFile(filename));
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
         }
-
-        // Do delete separately
-        for (String filename : currCommit.getTracking().keySet()) {
-            if (!branchCommit.getTracking().keySet().contains(filename)) {
-                Utils.restrictedDelete(Utils.join(CWD, filename));
+        Map<String, String> tree = Utils.getCommit(head).getTracking();
+        Map<String, String> from = getSparse().filter(tree);
+        for (Map.Entry<String, String> entry : from.entrySet()) {
+            String filename = entry.getKey();
+            if (!after.matches(filename)
+                    && !entry.getValue().equals(getStats().blobId(filename, Utils.join(CWD, filename)))) {
+                System.out.println("Cannot remove modified file " + filename
+                        + " from the working tree; commit or restore it first.");
+                return;
             }
         }
-
-        branches.put("current", branchName);
-        Utils.writeObject(Utils.join(GITLET_DIR, "branches"), branches);
-        clearStage();
+        Checkout checkout = new Checkout(CWD, blobs, getStats());
+        checkout.apply(from, after.filter(tree));
+        getStats().save();
+        after.save();
+        sparse = after;
     }
 
     public void rmBranch(String branchName) {
@@ -297,25 +758,7 @@ public class Repository {
 
         Commit currCommit = Utils.getCommit(head);
         Commit branchCommit = Utils.getCommit(commitHash);
-        List<String> cwdFiles = Utils.plainFilenamesIn(CWD);
-
-        for (String filename : cwdFiles) {
-            if (!currCommit.getTracking().containsKey(filename) && branchCommit.getTracking().containsKey(filename)) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                return;
-            }
-        }
-
-        for (String filename : branchCommit.getTracking().keySet()) {
-            Utils.writeContents(Utils.join(CWD, filename), branchCommit.getFile(filename));
-        }
-
-        // Do delete separately
-        for (String filename : currCommit.getTracking().keySet()) {
-            if (!branchCommit.getTracking().keySet().contains(filename)) {
-                Utils.restrictedDelete(Utils.join(CWD, filename));
-            }
-        }
+        checkout(currCommit, branchCommit);
 
         branches.put(branches.get("current"), commitHash);
         Utils.writeObject(Utils.join(GITLET_DIR, "branches"), branches);
@@ -327,85 +770,472 @@ public class Repository {
         if (mergeFailureCases(given)) {
             return;
         }
-        Commit splitCommit = findSplit(given);
-        Commit currentCommit = Utils.getCommit(head);
-        Commit givenCommit = Utils.getCommit(branches.get(given));
-        Set<String> splitFiles = splitCommit.getTracking().keySet();
-        Set<String> currentFiles = currentCommit.getTracking().keySet();
-        Set<String> givenFiles = givenCommit.getTracking().keySet();
-        Set<String> files = new HashSet<>();
-        files.addAll(splitFiles);
-        files.addAll(currentFiles);
-        files.addAll(givenFiles);
-        if (splitCommit.getHash().equals(givenCommit.getHash())) {
+        String givenHash = branches.get(given);
+        if (getGraph().isAncestor(givenHash, head)) {
             System.out.println("Given branch is an ancestor of the current branch.");
             return;
-        } else if (splitCommit.getHash().equals(currentCommit.getHash())) {
+        } else if (getGraph().isAncestor(head, givenHash)) {
+            getGraph().save();
             switchBranch(given);
             System.out.println("Current branch fast-forwarded.");
             return;
         }
-        for (String filename : files) {
-            boolean conflictCaseOne = isModified(filename, currentCommit, splitCommit)
-                    && isModified(filename, givenCommit, splitCommit)
-                    && !isSameContent(filename, givenCommit, currentCommit);
-            boolean conflictCaseTwo = !isContained(filename, splitCommit)
-                    && isContained(filename, currentCommit)
-                    && isContained(filename, givenCommit)
-                    && !isSameContent(filename, currentCommit, givenCommit);
-            if (!isModified(filename, currentCommit, splitCommit) && isModified(filename, givenCommit, splitCommit)) {
-                if (isContained(filename, splitCommit) && !isContained(filename, givenCommit)) {
-                    removed.put(filename, currentCommit.getTracking().get(filename));
-                    Utils.writeObject(Utils.join(STAGE_DIR, "removed"), removed);
-                    Utils.restrictedDelete(filename);
-                } else {
-                    Utils.writeContents(Utils.join(CWD, filename), givenCommit.getFile(filename));
-                    added.put(filename, Utils.readContents(Utils.join(CWD, filename)));
-                    Utils.writeObject(Utils.join(STAGE_DIR, "added"), added);
+        Commit splitCommit = findSplit(given);
+        getGraph().save();
+        if (splitCommit == null) {
+            System.out.println("Given branch shares no history with the current branch.");
+            return;
+        }
+        Commit currentCommit = Utils.getCommit(head);
+        Commit givenCommit = Utils.getCommit(givenHash);
+        RenameDetector renames = new RenameDetector(GITLET_DIR, blobs);
+        Rerere rerere = rerere();
+        MergePlan plan = new MergePlan(blobs, renames, rerere, splitCommit, currentCommit, givenCommit);
+        renames.save();
+        TreeBuilder tree = new TreeBuilder(blobs, COMMIT_DIR, head);
+        tree.apply(plan);
+        String merged = tree.commit(String.format("Merged %s into %s.", given, branches.get("current")),
+                givenHash);
+        checkout(currentCommit, Utils.getCommit(merged));
+        writeConflicts(plan, rerere);
+        if (plan.hasConflicts()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+        branches.put(branches.get("current"), merged);
+        Utils.writeObject(Utils.join(GITLET_DIR, "branches"), branches);
+    }
+
+    /** Applies the changes made by the commit with id COMMITID, or a unique
+     *  prefix of it, to the head of the current branch as a new commit. */
+    public void cherryPick(String commitId) {
+        String commitHash = findStringWithPrefix(commitId, Utils.plainFilenamesIn(COMMIT_DIR));
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        } else if (commitHash == null) {
+            System.out.println("No commit with that id exists.");
+            return;
+        }
+        Commit pick = Utils.getCommit(commitHash);
+        if (pick.getParent() == null) {
+            System.out.println("No changes added to the commit.");
+            return;
+        }
+        if (replay(head, List.of(pick)) == 0) {
+            System.out.println("No changes added to the commit.");
+        }
+    }
+
+    /** Replays the commits of the current branch that BRANCHNAME does not
+     *  have, oldest first, on top of BRANCHNAME, and moves the current
+     *  branch to the result. */
+    public void rebase(String branchName) {
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        } else if (!branches.containsKey(branchName)) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        } else if (branchName.equals(branches.get("current"))) {
+            System.out.println("Cannot rebase a branch onto itself.");
+            return;
+        }
+        String onto = branches.get(branchName);
+        if (getGraph().isAncestor(onto, head)) {
+            getGraph().save();
+            System.out.println("Already up-to-date.");
+            return;
+        } else if (getGraph().isAncestor(head, onto)) {
+            getGraph().save();
+            checkout(Utils.getCommit(head), Utils.getCommit(onto));
+            branches.put(branches.get("current"), onto);
+            Utils.writeObject(Utils.join(GITLET_DIR, "branches"), branches);
+            System.out.println("Current branch fast-forwarded.");
+            return;
+        }
+        LinkedList<Commit> picks = new LinkedList<>();
+        Commit curr = Utils.getCommit(head);
+        while (!getGraph().isAncestor(curr.getHash(), onto)) {
+            picks.addFirst(curr);
+            curr = parentOf(curr);
+            if (curr == null) {
+                getGraph().save();
+                System.out.println("Given branch shares no history with the current branch.");
+                return;
+            }
+        }
+        getGraph().save();
+        replay(onto, picks);
+    }
+
+    /** Applies the changes each of PICKS made to its first parent, in
+     *  order, starting from commit ONTO.  The commits are built in memory
+     *  and written straight to the object store; the working tree and the
+     *  current branch are only updated at the end, or at the first pick
+     *  that conflicts, which is left staged as far as it merged cleanly
+     *  and with markers in the conflicted files.  Returns the number of
+     *  commits made. */
+    private int replay(String onto, List<Commit> picks) {
+        RenameDetector renames = new RenameDetector(GITLET_DIR, blobs);
+        Rerere rerere = rerere();
+        String tip = onto;
+        int made = 0;
+        MergePlan stopped = null;
+        Commit stoppedAt = null;
+        for (Commit pick : picks) {
+            Commit tipCommit = Utils.getCommit(tip);
+            MergePlan plan = new MergePlan(blobs, renames, rerere, Utils.getCommit(pick.getParent()),
+                    tipCommit, pick);
+            if (plan.hasConflicts()) {
+                stopped = plan;
+                stoppedAt = pick;
+                break;
+            }
+            TreeBuilder tree = new TreeBuilder(blobs, COMMIT_DIR, tip);
+            tree.apply(plan);
+            if (!tree.isEmpty()) {
+                tip = tree.commit(pick.getMessage(), null);
+                made++;
+            }
+        }
+        renames.save();
+        Commit tipCommit = Utils.getCommit(tip);
+        if (stopped != null) {
+            for (MergePlan.Action action : stopped.actions()) {
+                if (action.kind != MergePlan.REMOVE && !tipCommit.containsFile(action.filename)
+                        && !Utils.getCommit(head).containsFile(action.filename)
+                        && inWorkTree(action) && Utils.join(CWD, action.filename).exists()) {
+                    throw Utils.error("There is an untracked file in the way; "
+                            + "delete it, or add and commit it first.");
                 }
-            } else if (!isContained(filename, splitCommit)
-                    && !isContained(filename, currentCommit)
-                    && isContained(filename, givenCommit)) {
-                Utils.writeContents(Utils.join(CWD, filename), givenCommit.getFile(filename));
-                added.put(filename, Utils.readContents(Utils.join(CWD, filename)));
-                Utils.writeObject(Utils.join(STAGE_DIR, "added"), added);
-            } else if (conflictCaseOne || conflictCaseTwo) {
-                System.out.println("Encountered a merge conflict.");
-                byte[] currentContents = new byte[0];
-                byte[] givenContents = new byte[0];
-                if (!isContained(filename, givenCommit) && isContained(filename, currentCommit)) {
-                    givenContents = new byte[0];
-                    currentContents = currentCommit.getFile(filename);
-                } else if (!isContained(filename, currentCommit) && isContained(filename, givenCommit)) {
-                    currentContents = new byte[0];
-                    givenContents = givenCommit.getFile(filename);
-                } else {
-                    currentContents = currentCommit.getFile(filename);
-                    givenContents = givenCommit.getFile(filename);
+            }
+        }
+        checkout(Utils.getCommit(head), tipCommit);
+        head = tip;
+        branches.put(branches.get("current"), tip);
+        Utils.writeObject(Utils.join(GITLET_DIR, "branches"), branches);
+        if (stopped != null) {
+            applyPlan(stopped, rerere);
+            System.out.printf("Could not apply %.8s %s%n", stoppedAt.getHash(), stoppedAt.getMessage());
+            System.out.println("Encountered a merge conflict.");
+        }
+        return made;
+    }
+
+    /** Applies PLAN to the working tree and the stage: files taken from
+     *  the other side, removed or cleanly merged are staged, and conflicted
+     *  files are written with markers for the user to resolve.  A
+     *  conflicted file the other side renamed is staged under its new name
+     *  with this side's version. */
+    private void applyPlan(MergePlan plan, Rerere rerere) {
+        Commit headCommit = Utils.getCommit(head);
+        Checkout checkout = new Checkout(CWD, blobs, getStats());
+        for (MergePlan.Action action : plan.actions()) {
+            boolean checkedOut = getSparse().matches(action.filename);
+            switch (action.kind) {
+                case MergePlan.TAKE:
+                case MergePlan.MERGED:
+                    if (checkedOut) {
+                        checkout.write(action.filename, action.blobId);
+                    }
+                    added.put(action.filename, action.blobId);
+                    break;
+                case MergePlan.REMOVE:
+                    if (checkedOut) {
+                        checkout.delete(action.filename);
+                    }
+                    removed.put(action.filename, action.currentId);
+                    break;
+                default:
+                    if (action.currentId != null
+                            && !action.currentId.equals(headCommit.getBlobId(action.filename))) {
+                        added.put(action.filename, action.currentId);
+                    }
+                    break;
+            }
+        }
+        checkout.run();
+        getStats().save();
+        writeConflicts(plan, rerere);
+        Utils.writeObject(Utils.join(STAGE_DIR, "added"), added);
+        Utils.writeObject(Utils.join(STAGE_DIR, "removed"), removed);
+    }
+
+    /** Returns true iff ACTION writes to the working tree: it is in the
+     *  sparse checkout, or a conflict, which is always written out. */
+    private boolean inWorkTree(MergePlan.Action action) {
+        return action.kind == MergePlan.CONFLICT || getSparse().matches(action.filename);
+    }
+
+    /** Writes the conflicted files of PLAN with markers around the lines
+     *  the two sides changed differently, and reports the files whose
+     *  conflicts RERERE, if not null, settled from earlier resolutions. */
+    private void writeConflicts(MergePlan plan, Rerere rerere) {
+        for (MergePlan.Action action : plan.actions()) {
+            if (action.resolution != null) {
+                rerere.remember(action.filename, action.resolution);
+                if (action.resolution.resolved > 0) {
+                    System.out.println("Resolved '" + action.filename + "' using previous resolution.");
                 }
-                Utils.writeContents(Utils.join(CWD, filename),
-                        "<<<<<<< HEAD\n", currentContents, "=======\n", givenContents, ">>>>>>>\n");
-            } else if (isContained(filename, splitCommit)
-                    && isContained(filename, currentCommit)
-                    && !isModified(filename, currentCommit, splitCommit)
-                    && !isContained(filename, givenCommit)) {
-                removed.put(filename, currentCommit.getTracking().get(filename));
-                Utils.writeObject(Utils.join(STAGE_DIR, "removed"), removed);
-                Utils.restrictedDelete(filename);
             }
+            if (action.kind != MergePlan.CONFLICT) {
+                continue;
+            }
+            if (action.blobId != null) {
+                blobs.copyTo(action.blobId, Utils.join(CWD, action.filename));
+            } else {
+                writeConflict(Utils.join(CWD, action.filename), action.currentId, action.givenId);
+            }
+        }
+        if (rerere != null) {
+            rerere.save();
+        }
+    }
+
+    /** Returns the store of recorded conflict resolutions, or null if the
+     *  rerere setting is false. */
+    private Rerere rerere() {
+        return "false".equals(config.get("rerere")) ? null : new Rerere(GITLET_DIR);
+    }
+
+    /** Saves the repository whose .gitlet directory is at PATH, written
+     *  with forward slashes, as remote NAME. */
+    public void addRemote(String name, String path) {
+        HashMap<String, String> remotes = remotes();
+        if (remotes.containsKey(name)) {
+            System.out.println("A remote with that name already exists.");
+            return;
+        }
+        remotes.put(name, path.replace("/", File.separator));
+        Utils.writeObject(Utils.join(GITLET_DIR, "remotes"), remotes);
+    }
+
+    public void rmRemote(String name) {
+        HashMap<String, String> remotes = remotes();
+        if (remotes.remove(name) == null) {
+            System.out.println("A remote with that name does not exist.");
+            return;
+        }
+        Utils.writeObject(Utils.join(GITLET_DIR, "remotes"), remotes);
+    }
+
+    /** Copies the commits and blobs of branch BRANCHNAME of remote
+     *  REMOTENAME that this repository lacks, and points the branch
+     *  REMOTENAME/BRANCHNAME at its head.  Returns false if it could not. */
+    public boolean fetch(String remoteName, String branchName) {
+        File remote = remoteDir(remoteName);
+        if (remote == null) {
+            return false;
+        }
+        HashMap<String, String> remoteBranches =
+                Utils.readObject(Utils.join(remote, "branches"), HashMap.class);
+        String want = remoteBranches.get(branchName);
+        if (want == null || branchName.equals("current")) {
+            System.out.println("That remote does not have that branch.");
+            return false;
+        }
+        Transfer transfer = new Transfer(remote, remoteBlobs(remote), CommitGraph.load(remote));
+        transfer.send(want, GITLET_DIR, blobs);
+        System.err.println(transfer.summary());
+        branches.put(remoteName + "/" + branchName, want);
+        Utils.writeObject(Utils.join(GITLET_DIR, "branches"), branches);
+        return true;
+    }
+
+    /** Copies the commits and blobs of the current branch that remote
+     *  REMOTENAME lacks, and moves its branch BRANCHNAME forward to the
+     *  head, provided that is where the branch still was. */
+    public void push(String remoteName, String branchName) {
+        File remote = remoteDir(remoteName);
+        if (remote == null) {
+            return;
+        }
+        HashMap<String, String> remoteBranches =
+                Utils.readObject(Utils.join(remote, "branches"), HashMap.class);
+        String remoteHead = remoteBranches.get(branchName);
+        if (remoteHead != null && (!Utils.join(COMMIT_DIR, remoteHead).isFile()
+                || !getGraph().isAncestor(remoteHead, head))) {
+            System.out.println("Please pull down remote changes before pushing.");
+            return;
+        }
+        Transfer transfer = new Transfer(GITLET_DIR, blobs, getGraph());
+        transfer.send(head, remote, remoteBlobs(remote));
+        getGraph().save();
+        if (!Transfer.compareAndSet(remote, branchName, remoteHead, head)) {
+            System.out.println("Please pull down remote changes before pushing.");
+            return;
         }
-        commit(String.format("Merged %s into %s.", given, branches.get("current")), branches.get(given));
+        System.err.println(transfer.summary());
+    }
+
+    /** Fetches branch BRANCHNAME of remote REMOTENAME and merges it into
+     *  the current branch. */
+    public void pull(String remoteName, String branchName) {
+        if (fetch(remoteName, branchName)) {
+            merge(remoteName + "/" + branchName);
+        }
+    }
+
+    /** Makes the current directory a copy of the repository at the path
+     *  in ARGS, with all of its branches, and checks out its current
+     *  branch.  With "--depth N" only the commits fewer than N steps from
+     *  each branch head are copied, and those whose parents were left out
+     *  are recorded in .gitlet/shallow.  With "--filter=blob:none" no blobs
+     *  are copied, and the source is recorded as the promisor repository
+     *  from which those needed are fetched later. */
+    public void cloneFrom(String[] args) {
+        int depth = 0;
+        boolean partial = false;
+        String path = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--depth") && i + 1 < args.length
+                    && args[i + 1].matches("[1-9][0-9]*")) {
+                depth = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--filter=blob:none")) {
+                partial = true;
+            } else if (path == null && !args[i].startsWith("--")) {
+                path = args[i];
+            } else {
+                path = null;
+                break;
+            }
+        }
+        if (path == null) {
+            System.out.println("Incorrect operands.");
+            return;
+        } else if (GITLET_DIR.exists()) {
+            System.out.println("A Gitlet version-control system already exists in the current directory.");
+            return;
+        }
+        File source = new File(path);
+        if (!source.isAbsolute()) {
+            source = Utils.join(CWD, path);
+        }
+        if (Utils.join(source, ".gitlet").isDirectory()) {
+            source = Utils.join(source, ".gitlet");
+        }
+        if (!Utils.join(source, "branches").isFile()) {
+            System.out.println("Remote directory not found.");
+            return;
+        }
+        HashMap<String, String> sourceBranches =
+                Utils.readObject(Utils.join(source, "branches"), HashMap.class);
+        String current = sourceBranches.get("current");
+        Commit sourceHead = Utils.getCommit(source, sourceBranches.get(current));
+        for (String filename : sourceHead.fileNames()) {
+            if (Utils.join(CWD, filename).exists()) {
+                System.out.println("There is an untracked file in the way;"
+                        + " delete it, or add and commit it first.");
+                return;
+            }
+        }
+
+        GITLET_DIR.mkdirs();
+        COMMIT_DIR.mkdirs();
+        BLOB_DIR.mkdirs();
+        STAGE_DIR.mkdirs();
+        Utils.writeObject(Utils.join(STAGE_DIR, "added"), added);
+        Utils.writeObject(Utils.join(STAGE_DIR, "removed"), removed);
+        branches.put("current", current);
+        Utils.writeObject(Utils.join(GITLET_DIR, "branches"), branches);
+        Transfer transfer = new Transfer(source, remoteBlobs(source), CommitGraph.load(source));
+        transfer.setDepth(depth);
+        config.put(HashAlgorithm.CONFIG_KEY, HashAlgorithm.of(source).name());
+        if (partial) {
+            transfer.omitBlobs();
+            config.put("promisor", source.getAbsoluteFile().toPath().normalize().toString());
+        }
+        Utils.writeObject(Utils.join(GITLET_DIR, "config"), config);
+        for (String name : new TreeSet<>(sourceBranches.keySet())) {
+            if (!name.equals("current")) {
+                transfer.send(sourceBranches.get(name), GITLET_DIR, blobs);
+                branches.put(name, sourceBranches.get(name));
+                Utils.writeObject(Utils.join(GITLET_DIR, "branches"), branches);
+            }
+        }
+        HashSet<String> boundary = new HashSet<>();
+        for (String id : Utils.plainFilenamesIn(COMMIT_DIR)) {
+            Commit commit = Utils.getCommit(id);
+            for (String parent : new String[] {commit.getParent(), commit.getSecondParent()}) {
+                if (parent != null && !Utils.join(COMMIT_DIR, parent).isFile()) {
+                    boundary.add(id);
+                }
+            }
+        }
+        if (!boundary.isEmpty()) {
+            Utils.writeObject(Utils.join(GITLET_DIR, "shallow"), boundary);
+        }
+
+        head = sourceHead.getHash();
+        new Checkout(CWD, blobs, getStats()).apply(new HashMap<>(), sourceHead.getTracking());
+        getStats().save();
+    }
+
+    /** Serves the repositories in the subdirectories of a directory over
+     *  a Unix domain socket.  ARGS are the socket file, the directory, and
+     *  optionally how many requests may run at once and how many
+     *  connections may be open at once. */
+    public void serve(String[] args) {
+        if (args.length < 2 || args.length > 4) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        int active = args.length >= 3 ? Integer.parseInt(args[2]) : HostServer.DEFAULT_ACTIVE;
+        int connections = args.length == 4 ? Integer.parseInt(args[3])
+                : HostServer.DEFAULT_CONNECTIONS;
+        try {
+            new HostServer(new File(args[1]), active, connections).serve(new File(args[0]));
+        } catch (IOException excp) {
+            throw Utils.error("%s", "Cannot serve: " + excp.getMessage());
+        }
+    }
+
+    private HashMap<String, String> remotes() {
+        File file = Utils.join(GITLET_DIR, "remotes");
+        return file.exists() ? Utils.readObject(file, HashMap.class) : new HashMap<>();
+    }
+
+    /** Returns the .gitlet directory of remote NAME, or null, having said
+     *  why, if there is none. */
+    private File remoteDir(String name) {
+        String path = remotes().get(name);
+        if (path == null) {
+            System.out.println("A remote with that name does not exist.");
+            return null;
+        }
+        File dir = new File(path);
+        if (!dir.isAbsolute()) {
+            dir = Utils.join(CWD, path);
+        }
+        if (!Utils.join(dir, "branches").isFile()) {
+            System.out.println("Remote directory not found.");
+            return null;
+        } else if (!HashAlgorithm.of(dir).name().equals(blobs.algorithm().name())) {
+            System.out.println("The remote repository uses a different hash algorithm.");
+            return null;
+        }
+        return dir;
+    }
+
+    /** Returns the blob store of the repository in GITLETDIR, chunking as
+     *  that repository is configured to. */
+    static BlobStore remoteBlobs(File gitletDir) {
+        BlobStore store = new BlobStore(gitletDir);
+        File configFile = Utils.join(gitletDir, "config");
+        if (configFile.exists()) {
+            HashMap<String, String> remoteConfig = Utils.readObject(configFile, HashMap.class);
+            store.setChunking("true".equals(remoteConfig.get("chunking")));
+        }
+        return store;
     }
 
     public boolean willBeOverridden(String given) {
         Commit currentCommit = Utils.getCommit(head);
         Commit givenCommit = Utils.getCommit(branches.get(given));
 
-        Set<String> currentFiles = currentCommit.getTracking().keySet();
-        Set<String> givenFiles = givenCommit.getTracking().keySet();
-
-        for (String filename : givenFiles) {
-            if (Utils.plainFilenamesIn(CWD).contains(filename) && !currentFiles.contains(filename)) {
+        for (String filename : givenCommit.fileNames()) {
+            if (!currentCommit.containsFile(filename) && getSparse().matches(filename)
+                    && Utils.join(CWD, filename).isFile()) {
                 return true;
             }
         }
@@ -431,46 +1261,54 @@ public class Repository {
     }
 
     public Commit findSplit(String branchName) {
-        Set<String> ancestors = new HashSet<>();
-        Commit curr = Utils.getCommit(head);
-        Commit other = Utils.getCommit(branches.get(branchName));
+        return Utils.getCommit(getGraph().firstCommonAncestor(head, branches.get(branchName)));
+    }
 
-        Queue<Commit> queue = new LinkedList<>();
-        queue.offer(curr);
-        while (!queue.isEmpty()) {
-            Commit commit = queue.poll();
-            if (!ancestors.add(commit.getHash())) {
-                continue;
-            }
-            if (commit.getParent() != null) {
-                queue.offer(Utils.getCommit(commit.getParent()));
-            }
-            if (commit.getSecondParent() != null) {
-                queue.offer(Utils.getCommit(commit.getSecondParent()));
-            }
+
+
+
+    private StatCache getStats() {
+        if (stats == null) {
+            stats = StatCache.load(GITLET_DIR, blobs.algorithm());
         }
+        return stats;
+    }
 
-        queue.clear();
-        queue.offer(other);
-        Set<String> visited = new HashSet<>();
+    private UntrackedCache getUntracked() {
+        if (untracked == null) {
+            untracked = UntrackedCache.load(GITLET_DIR, new IgnoreRules(CWD));
+        }
+        return untracked;
+    }
 
-        while (!queue.isEmpty()) {
-            Commit commit = queue.poll();
-            if (!visited.add(commit.getHash())) {
-                continue;
-            }
-            if (ancestors.contains(commit.getHash())) {
-                return commit;
-            }
-            if (commit.getParent() != null) {
-                queue.offer(Utils.getCommit(commit.getParent()));
-            }
-            if (commit.getSecondParent() != null) {
-                queue.offer(Utils.getCommit(commit.getSecondParent()));
-            }
+    private FsMonitor getMonitor() {
+        if (monitor == null) {
+            monitor = new FsMonitor(GITLET_DIR);
         }
+        return monitor;
+    }
 
-        return null;
+    private SparseCheckout getSparse() {
+        if (sparse == null) {
+            sparse = new SparseCheckout(GITLET_DIR);
+        }
+        return sparse;
+    }
+
+    /** Returns the first parent of CURR, or null if it is a root or on the
+     *  boundary of a shallow clone. */
+    private Commit parentOf(Commit curr) {
+        if (shallow == null) {
+            shallow = Utils.shallowCommits(GITLET_DIR);
+        }
+        return shallow.contains(curr.getHash()) ? null : Utils.getCommit(curr.getParent());
+    }
+
+    private CommitGraph getGraph() {
+        if (graph == null) {
+            graph = CommitGraph.load(GITLET_DIR);
+        }
+        return graph;
     }
 
     public boolean isModified(String filename, Commit curr, Commit splitPoint) {
@@ -480,23 +1318,44 @@ public class Repository {
         } else if (isContained(filename, splitPoint) && !isContained(filename, curr)) {
             return true; // files that have been removed HAVE been modified
         } else if (isContained(filename, splitPoint) && isContained(filename, curr)) {
-            byte[] splitFile = splitPoint.getFile(filename);
-            byte[] currFile = curr.getFile(filename);
-
-            return !Arrays.equals(splitFile, currFile);
+            return !splitPoint.getBlobId(filename).equals(curr.getBlobId(filename));
         }
         return false; // this will never be called (case where file does not exist in either)
     }
 
     public boolean isContained(String filename, Commit curr) {
-        return curr.getTracking().containsKey(filename);
+        return curr.containsFile(filename);
     }
 
     public boolean isSameContent(String filename, Commit commitOne, Commit commitTwo) {
-        byte[] first = commitOne.getFile(filename);
-        byte[] second = commitTwo.getFile(filename);
+        return Objects.equals(commitOne.getBlobId(filename), commitTwo.getBlobId(filename));
+    }
+
+    /** Writes a whole-file conflict to FILE, streaming the contents of blobs
+     *  CURRENTID and GIVENID between the markers.  A null id stands for a
+     *  deleted file. */
+    private void writeConflict(File file, String currentId, String givenId) {
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeText(out, "<<<<<<< HEAD\n");
+            if (currentId != null) {
+                blobs.transferTo(currentId, out);
+            }
+            writeText(out, "=======\n");
+            if (givenId != null) {
+                blobs.transferTo(givenId, out);
+            }
+            writeText(out, ">>>>>>>\n");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
 
-        return Arrays.equals(first, second);
+    private static void writeText(WritableByteChannel out, String text) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
     }
 
     public void clearStage() {
@@ -0,0 +1,186 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Reuses recorded resolutions of merge conflicts.
+ *
+ *  Each conflicted region is keyed by a hash of its two sides, ordered so
+ *  that the key does not depend on which branch is merged into which.
+ *  When a conflicted file is written, the text around its conflicts is
+ *  remembered in .gitlet/MERGE_RR.  When the file is next committed, the
+ *  text the user put between those stable parts is taken to resolve the
+ *  conflicts, and saved as .gitlet/rr-cache/KEY/postimage next to the
+ *  conflict itself in preimage.  A later merge looks each conflict up by
+ *  its key and uses the recorded resolution if there is one.
+ */
+class Rerere {
+
+    /** Recorded conflicts not resolved yet: what surrounds them in a
+     *  conflicted file, and their keys. */
+    private static class Pending implements Serializable {
+        /** segments[i] is the text before conflict i; the last segment
+         *  follows the last conflict. */
+        private final ArrayList<byte[]> segments = new ArrayList<>();
+        private final ArrayList<String> keys = new ArrayList<>();
+        private final ArrayList<byte[]> preimages = new ArrayList<>();
+    }
+
+    /** The outcome of resolving a merge with recorded resolutions. */
+    static class Resolution {
+        /** The file, with resolved conflicts replaced and the rest
+         *  still marked. */
+        final byte[] contents;
+        /** The number of conflicts resolved, and the number left. */
+        final int resolved;
+        final int remaining;
+        private final Pending pending;
+
+        private Resolution(byte[] contents, int resolved, int remaining, Pending pending) {
+            this.contents = contents;
+            this.resolved = resolved;
+            this.remaining = remaining;
+            this.pending = pending;
+        }
+    }
+
+    private final File cacheDir;
+    private final File pendingFile;
+    private HashMap<String, Pending> pending;
+
+    Rerere(File gitletDir) {
+        this.cacheDir = Utils.join(gitletDir, "rr-cache");
+        this.pendingFile = Utils.join(gitletDir, "MERGE_RR");
+    }
+
+    /** Returns MERGED with every conflict that has a recorded resolution
+     *  replaced by it. */
+    Resolution resolve(Merge3 merged) {
+        byte[] result = merged.result();
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        Pending left = new Pending();
+        int resolved = 0;
+        int done = 0;
+        for (Merge3.Conflict conflict : merged.conflicts()) {
+            segment.write(result, done, conflict.start - done);
+            File postimage = Utils.join(cacheDir, conflict.key(), "postimage");
+            if (postimage.isFile()) {
+                segment.writeBytes(Utils.readContents(postimage));
+                resolved++;
+            } else {
+                contents.writeBytes(segment.toByteArray());
+                left.segments.add(segment.toByteArray());
+                left.keys.add(conflict.key());
+                left.preimages.add(Arrays.copyOfRange(result, conflict.start, conflict.end));
+                segment.reset();
+                contents.write(result, conflict.start, conflict.end - conflict.start);
+            }
+            done = conflict.end;
+        }
+        segment.write(result, done, result.length - done);
+        contents.writeBytes(segment.toByteArray());
+        left.segments.add(segment.toByteArray());
+        return new Resolution(contents.toByteArray(), resolved, left.keys.size(), left);
+    }
+
+    /** Remembers that FILENAME was written as RESOLUTION, so that its
+     *  remaining conflicts can be recorded once it is committed. */
+    void remember(String filename, Resolution resolution) {
+        loadPending();
+        if (resolution.remaining > 0) {
+            pending.put(filename, resolution.pending);
+        } else {
+            pending.remove(filename);
+        }
+    }
+
+    /** Records the resolutions of conflicted files among STAGED, a map
+     *  from file name to the id of the blob in BLOBS about to be committed. */
+    void record(Map<String, String> staged, BlobStore blobs) {
+        if (pending == null && !pendingFile.isFile()) {
+            return;
+        }
+        loadPending();
+        for (Map.Entry<String, String> entry : staged.entrySet()) {
+            Pending conflicts = pending.remove(entry.getKey());
+            if (conflicts != null) {
+                record(conflicts, blobs.read(entry.getValue()));
+            }
+        }
+    }
+
+    /** Writes the list of conflicted files back if it was read. */
+    void save() {
+        if (pending == null) {
+            return;
+        }
+        if (pending.isEmpty()) {
+            pendingFile.delete();
+        } else {
+            Utils.writeObject(pendingFile, pending);
+        }
+    }
+
+    /** Records the resolutions of CONFLICTS found in RESOLVED, the text the
+     *  user replaced the conflicted file with, if its stable segments are
+     *  still there, in order, and it has no conflict markers left. */
+    private void record(Pending conflicts, byte[] resolved) {
+        List<byte[]> segments = conflicts.segments;
+        byte[] first = segments.get(0);
+        byte[] last = segments.get(segments.size() - 1);
+        if (!Arrays.equals(resolved, 0, Math.min(first.length, resolved.length), first, 0, first.length)
+                || indexOf(resolved, Merge3.OURS_MARKER.getBytes(StandardCharsets.UTF_8), 0) >= 0) {
+            return;
+        }
+        int[] bounds = new int[2 * conflicts.keys.size()];
+        int pos = first.length;
+        for (int i = 1; i < segments.size(); i++) {
+            byte[] segment = segments.get(i);
+            int at = i == segments.size() - 1 ? resolved.length - last.length
+                    : indexOf(resolved, segment, pos);
+            if (at < pos || !Arrays.equals(resolved, at, at + segment.length, segment, 0, segment.length)) {
+                return;
+            }
+            bounds[2 * (i - 1)] = pos;
+            bounds[2 * (i - 1) + 1] = at;
+            pos = at + segment.length;
+        }
+        for (int i = 0; i < conflicts.keys.size(); i++) {
+            File dir = Utils.join(cacheDir, conflicts.keys.get(i));
+            dir.mkdirs();
+            Utils.writeContents(Utils.join(dir, "preimage"), conflicts.preimages.get(i));
+            Utils.writeContents(Utils.join(dir, "postimage"),
+                    Arrays.copyOfRange(resolved, bounds[2 * i], bounds[2 * i + 1]));
+        }
+    }
+
+    /** Returns the first index at or after FROM where TARGET occurs in
+     *  DATA, or -1. */
+    private static int indexOf(byte[] data, byte[] target, int from) {
+        outer:
+        for (int i = from; i <= data.length - target.length; i++) {
+            for (int k = 0; k < target.length; k++) {
+                if (data[i + k] != target[k]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadPending() {
+        if (pending == null) {
+            pending = pendingFile.isFile() ? Utils.readObject(pendingFile, HashMap.class) : new HashMap<>();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** The paths a sparse checkout keeps in the working tree.
+ *
+ *  The patterns are kept one per line in .gitlet/sparse-checkout.  A
+ *  pattern without wildcards names a file or a directory, and matches it
+ *  and everything under it.  Any other pattern is a glob, matched against
+ *  the whole path if it has a slash and against the last component of
+ *  the path otherwise, so "*.md" matches every Markdown file.  Without the
+ *  file every path matches.
+ *
+ *  Commits keep tracking every file; only what is written to, checked in
+ *  and deleted from the working tree is limited to the matching paths.
+ */
+class SparseCheckout {
+
+    private final File file;
+    private final List<String> patterns = new ArrayList<>();
+    private final Set<String> paths = new HashSet<>();
+    private final List<PathMatcher> fullGlobs = new ArrayList<>();
+    private final List<PathMatcher> nameGlobs = new ArrayList<>();
+    private boolean enabled;
+
+    /** The sparse checkout of the repository in GITLETDIR. */
+    SparseCheckout(File gitletDir) {
+        file = Utils.join(gitletDir, "sparse-checkout");
+        if (file.isFile()) {
+            enabled = true;
+            for (String line : Utils.readContentsAsString(file).split("\n")) {
+                add(line);
+            }
+        }
+    }
+
+    /** Returns true iff only some paths are checked out. */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Returns the patterns, in the order given. */
+    List<String> patterns() {
+        return patterns;
+    }
+
+    /** Adds PATTERN, ignoring blank lines and comments. */
+    void add(String pattern) {
+        pattern = pattern.trim();
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return;
+        }
+        enabled = true;
+        patterns.add(pattern);
+        if (!pattern.matches(".*[*?\\[{].*")) {
+            paths.add(pattern.replaceAll("^/+|/+$", ""));
+        } else if (pattern.contains("/")) {
+            fullGlobs.add(FileSystems.getDefault().getPathMatcher(
+                    "glob:" + pattern.replaceAll("^/+", "")));
+        } else {
+            nameGlobs.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+    }
+
+    /** Returns true iff FILENAME, a path relative to the working tree,
+     *  is checked out. */
+    boolean matches(String filename) {
+        if (!enabled) {
+            return true;
+        }
+        for (int end = filename.length(); end > 0; end = filename.lastIndexOf('/', end - 1)) {
+            if (paths.contains(filename.substring(0, end))) {
+                return true;
+            }
+        }
+        for (PathMatcher glob : fullGlobs) {
+            if (glob.matches(Paths.get(filename))) {
+                return true;
+            }
+        }
+        String name = filename.substring(filename.lastIndexOf('/') + 1);
+        for (PathMatcher glob : nameGlobs) {
+            if (glob.matches(Paths.get(name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the entries of TREE, a map from file name to blob id, whose
+     *  files are checked out. */
+    Map<String, String> filter(Map<String, String> tree) {
+        if (!enabled) {
+            return tree;
+        }
+        HashMap<String, String> result = new HashMap<>();
+        for (Map.Entry<String, String> entry : tree.entrySet()) {
+            if (matches(entry.getKey())) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /** Removes every pattern, checking out every path again. */
+    void clear() {
+        enabled = false;
+        patterns.clear();
+        paths.clear();
+        fullGlobs.clear();
+        nameGlobs.clear();
+    }
+
+    /** Writes the patterns back, removing the file if there are none. */
+    void save() {
+        if (!enabled) {
+            file.delete();
+        } else {
+            Utils.writeContents(file, String.join("\n", patterns) + "\n");
+        }
+    }
+}
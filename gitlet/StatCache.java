@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashMap;
+
+/** Remembers the size, modification time and blob id of working-tree
+ *  files as gitlet last wrote or hashed them, kept in .gitlet/stat-cache.
+ *
+ *  If a file's size and modification time still match its entry, its
+ *  contents are taken to be the recorded blob and it need not be read
+ *  again.  An entry recorded within RACY_MILLIS of the file's
+ *  modification time is never trusted, since a later write in the same
+ *  clock tick would leave both unchanged.
+ *
+ *  Entries made when gitlet hashed a file also hold its Fingerprint.  A
+ *  file whose modification time changed but whose size did not is
+ *  fingerprinted first, and only hashed again if that differs, so
+ *  touching a file or rewriting it unchanged costs a fast read rather
+ *  than a cryptographic hash.
+ */
+class StatCache implements Serializable {
+
+    /** Coarsest file-system timestamp resolution we allow for. */
+    static final long RACY_MILLIS = 2000;
+
+    private final HashMap<String, Entry> entries = new HashMap<>();
+
+    private transient File gitletDir;
+    private transient HashAlgorithm algorithm;
+    private transient boolean dirty;
+
+    /** Returns the stat cache of the repository in GITLETDIR, whose
+     *  hash function is ALGORITHM, starting afresh if the one written
+     *  cannot be read. */
+    static StatCache load(File gitletDir, HashAlgorithm algorithm) {
+        File file = Utils.join(gitletDir, "stat-cache");
+        StatCache cache = new StatCache();
+        if (file.isFile()) {
+            try {
+                cache = Utils.readObject(file, StatCache.class);
+            } catch (IllegalArgumentException excp) {
+                cache.dirty = true;
+            }
+        }
+        cache.gitletDir = gitletDir;
+        cache.algorithm = algorithm;
+        return cache;
+    }
+
+    /** Writes this cache back to its repository if it has changed. */
+    void save() {
+        if (dirty) {
+            Utils.writeObject(Utils.join(gitletDir, "stat-cache"), this);
+            dirty = false;
+        }
+    }
+
+    /** Returns the blob id of FILE, the working-tree copy of FILENAME,
+     *  hashing it only if its entry is missing or out of date.  Returns
+     *  null if FILE does not exist. */
+    String blobId(String filename, File file) {
+        if (!file.isFile()) {
+            forget(filename);
+            return null;
+        }
+        Entry entry = entries.get(filename);
+        if (entry != null && entry.matches(file)) {
+            return entry.blobId.toHex();
+        }
+        if (entry != null && entry.fingerprinted && entry.size == file.length()) {
+            long fingerprint = Fingerprint.of(file);
+            if (fingerprint == entry.fingerprint) {
+                String id = entry.blobId.toHex();
+                record(filename, file, id, fingerprint);
+                return id;
+            }
+        }
+        Fingerprint fingerprint = new Fingerprint();
+        String id = algorithm.hash(file, fingerprint);
+        record(filename, file, id, fingerprint.value());
+        return id;
+    }
+
+    /** Returns the blob id last recorded for FILENAME, without looking at
+     *  the file, or null if there is none.  Only for callers that know the
+     *  file has not changed since. */
+    String recorded(String filename) {
+        Entry entry = entries.get(filename);
+        return entry == null ? null : entry.blobId.toHex();
+    }
+
+    /** Returns true iff FILE, the working-tree copy of FILENAME, is known
+     *  to hold exactly blob BLOBID. */
+    boolean isClean(String filename, File file, String blobId) {
+        return blobId != null && blobId.equals(blobId(filename, file));
+    }
+
+    /** Records that FILE, the working-tree copy of FILENAME, holds blob BLOBID. */
+    void record(String filename, File file, String blobId) {
+        entries.put(filename, new Entry(file.length(), file.lastModified(), blobId));
+        dirty = true;
+    }
+
+    /** Records that FILE, the working-tree copy of FILENAME, holds blob
+     *  BLOBID, whose Fingerprint is FINGERPRINT. */
+    private void record(String filename, File file, String blobId, long fingerprint) {
+        Entry entry = new Entry(file.length(), file.lastModified(), blobId);
+        entry.fingerprint = fingerprint;
+        entry.fingerprinted = true;
+        entries.put(filename, entry);
+        dirty = true;
+    }
+
+    /** Forgets what is known about FILENAME. */
+    void forget(String filename) {
+        if (entries.remove(filename) != null) {
+            dirty = true;
+        }
+    }
+
+    private static class Entry implements Serializable {
+        private final long size;
+        private final long modified;
+        private final long recorded;
+        private final ObjectId blobId;
+        private long fingerprint;
+        private boolean fingerprinted;
+
+        Entry(long size, long modified, String blobId) {
+            this.size = size;
+            this.modified = modified;
+            this.recorded = System.currentTimeMillis();
+            this.blobId = ObjectId.fromHex(blobId);
+        }
+
+        boolean matches(File file) {
+            return recorded - modified >= RACY_MILLIS
+                    && file.length() == size && file.lastModified() == modified;
+        }
+    }
+}
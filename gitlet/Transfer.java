@@ -0,0 +1,324 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/** Copies the commits and blobs one repository lacks from another.
+ *
+ *  The receiving repository offers the heads of its branches as the
+ *  commits it has.  The sender keeps those it knows too and, with its
+ *  commit graph, finds the commits reachable from the one wanted but from
+ *  none of those; only their blobs are candidates to send.  Blobs in the
+ *  trees of the shared heads are skipped outright, and only the rest are
+ *  looked up in the receiver's store, one by one.  The objects are
+ *  then streamed into a single pack file in the receiver's scratch
+ *  directory and unpacked there, blobs first and commits parents first.
+ *  Negotiating, writing a pack and reading one are separate steps, so a
+ *  server can stream the pack over a connection instead.  A transfer for
+ *  a shallow clone can be limited to the commits near the one wanted, and
+ *  one for a partial clone can leave out the blobs.
+ */
+class Transfer {
+
+    /** "GLPK", the first four bytes of every pack. */
+    static final int PACK_MAGIC = 0x474c504b;
+    static final int PACK_VERSION = 1;
+    static final int COMMIT = 0;
+    static final int BLOB = 1;
+
+    private final File source;
+    private final BlobStore sourceBlobs;
+    private final CommitGraph sourceGraph;
+    private final List<String> commits = new ArrayList<>();
+    private final Set<String> blobs = new LinkedHashSet<>();
+    private int depth;
+    private boolean omitBlobs;
+    private Received received;
+
+    /** The objects a receiver took in from one pack. */
+    static class Received {
+        int commits;
+        int blobs;
+        long bytes;
+
+        String summary() {
+            return String.format("Sent %d commit%s and %d blob%s (%d bytes).",
+                    commits, commits == 1 ? "" : "s", blobs, blobs == 1 ? "" : "s", bytes);
+        }
+    }
+
+    /** A transfer from the repository whose .gitlet directory is SOURCE,
+     *  with blobs SOURCEBLOBS and commit graph SOURCEGRAPH. */
+    Transfer(File source, BlobStore sourceBlobs, CommitGraph sourceGraph) {
+        this.source = source;
+        this.sourceBlobs = sourceBlobs;
+        this.sourceGraph = sourceGraph;
+    }
+
+    /** Limits what later sends copy to the commits fewer than DEPTH steps
+     *  from the one wanted, or lifts the limit if DEPTH is 0. */
+    void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /** Makes later sends copy commits only, leaving their blobs to be
+     *  fetched when needed, as in a partial clone. */
+    void omitBlobs() {
+        omitBlobs = true;
+    }
+
+    /** Copies to the repository in TARGET, with blobs TARGETBLOBS, every
+     *  commit reachable from commit WANT, and every blob they track, that
+     *  it does not have yet. */
+    void send(String want, File target, BlobStore targetBlobs) {
+        HashMap<String, String> targetBranches =
+                Utils.readObject(Utils.join(target, "branches"), HashMap.class);
+        targetBranches.remove("current");
+        negotiate(want, targetBranches.values(),
+            id -> Utils.join(target, "commits", id).isFile(), targetBlobs::contains);
+        if (isEmpty()) {
+            received = new Received();
+            return;
+        }
+        File pack = Utils.join(target, "tmp", "pack-" + want);
+        pack.getParentFile().mkdirs();
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(pack))) {
+                writePack(out);
+            }
+            try (InputStream in = new BufferedInputStream(new FileInputStream(pack))) {
+                received = unpack(in, target, targetBlobs);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            pack.delete();
+        }
+    }
+
+    /** Works out what to send a receiver that wants commit WANT and offers
+     *  OFFERED as commits it has, some of which may be unknown here.
+     *  HASCOMMIT and HASBLOB, if not null, tell whether the receiver has
+     *  an object that negotiation could not rule out. */
+    void negotiate(String want, Collection<String> offered, Predicate<String> hasCommit,
+                   Predicate<String> hasBlob) {
+        commits.clear();
+        blobs.clear();
+        List<String> haves = new ArrayList<>();
+        for (String have : offered) {
+            if (Utils.join(source, "commits", have).isFile()) {
+                haves.add(have);
+            }
+        }
+        Set<String> window = depth > 0 ? sourceGraph.within(want, depth) : null;
+        for (String id : sourceGraph.missing(want, haves)) {
+            if ((window == null || window.contains(id))
+                    && (hasCommit == null || !hasCommit.test(id))) {
+                commits.add(id);
+            }
+        }
+        if (omitBlobs) {
+            return;
+        }
+        Set<String> shared = new HashSet<>();
+        for (String have : haves) {
+            shared.addAll(Utils.getCommit(source, have).blobIds());
+        }
+        for (String id : commits) {
+            for (String blobId : Utils.getCommit(source, id).blobIds()) {
+                if (!shared.contains(blobId) && !blobs.contains(blobId)
+                        && (hasBlob == null || !hasBlob.test(blobId))) {
+                    blobs.add(blobId);
+                }
+            }
+        }
+    }
+
+    /** Returns true iff negotiation found nothing to send. */
+    boolean isEmpty() {
+        return commits.isEmpty() && blobs.isEmpty();
+    }
+
+    /** Returns a summary of what the last send copied. */
+    String summary() {
+        return received.summary();
+    }
+
+    /** Writes the objects negotiation chose to OUT as a pack: the blobs,
+     *  then the commits, parents first. */
+    void writePack(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(PACK_MAGIC);
+        out.writeInt(PACK_VERSION);
+        out.writeInt(blobs.size() + commits.size());
+        for (String id : blobs) {
+            out.writeByte(BLOB);
+            out.writeUTF(id);
+            out.writeLong(sourceBlobs.size(id));
+            try (InputStream in = sourceBlobs.open(id)) {
+                in.transferTo(out);
+            }
+        }
+        for (String id : commits) {
+            File file = Utils.join(source, "commits", id);
+            out.writeByte(COMMIT);
+            out.writeUTF(id);
+            out.writeLong(file.length());
+            Files.copy(file.toPath(), out);
+        }
+        out.flush();
+    }
+
+    /** Reads a pack from IN into the repository in TARGET, with blobs
+     *  TARGETBLOBS, checking each object against its id. */
+    static Received unpack(InputStream stream, File target, BlobStore targetBlobs)
+            throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != PACK_MAGIC || in.readInt() != PACK_VERSION) {
+            throw Utils.error("Pack is corrupt.");
+        }
+        Received received = new Received();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int type = in.readByte();
+            String id = in.readUTF();
+            long size = in.readLong();
+            Limited object = new Limited(in, size);
+            if (type == BLOB) {
+                if (!targetBlobs.write(object, size).equals(id)) {
+                    throw Utils.error("Pack is corrupt: blob %s does not match its id.", id);
+                }
+                received.blobs++;
+            } else {
+                unpackCommit(target, id, object, targetBlobs.algorithm());
+                received.commits++;
+            }
+            received.bytes += size;
+            object.skipRest();
+        }
+        return received;
+    }
+
+    /** Adds commit ID, serialized in IN, to the repository in TARGET,
+     *  whose hash function is ALGORITHM, having hashed its contents again
+     *  to check that they are what ID names. */
+    private static void unpackCommit(File target, String id, InputStream in,
+                                     HashAlgorithm algorithm) throws IOException {
+        File temp = Utils.join(target, "tmp", "commit-" + id);
+        temp.getParentFile().mkdirs();
+        Files.copy(in, temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Commit commit = Utils.readObject(temp, Commit.class);
+        if (!commit.computeId(algorithm).toHex().equals(id) || !commit.getHash().equals(id)) {
+            temp.delete();
+            throw Utils.error("Pack is corrupt: commit %s does not match its id.", id);
+        }
+        Files.move(temp.toPath(), Utils.join(target, "commits", id).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Points BRANCH of the repository in GITLETDIR at commit UPDATE,
+     *  provided it still points at EXPECTED, or does not exist if EXPECTED
+     *  is null.  Returns false, changing nothing, if it does not.  The
+     *  branches file is locked for the check and the update. */
+    static boolean compareAndSet(File gitletDir, String branch, String expected, String update) {
+        File lock = Utils.join(gitletDir, "branches.lock");
+        try {
+            Files.createFile(lock.toPath());
+        } catch (FileAlreadyExistsException excp) {
+            throw Utils.error("Another update of the remote is in progress.");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        try {
+            File file = Utils.join(gitletDir, "branches");
+            HashMap<String, String> branches = Utils.readObject(file, HashMap.class);
+            String current = branches.get(branch);
+            if (expected == null ? current != null : !expected.equals(current)) {
+                return false;
+            }
+            branches.put(branch, update);
+            File temp = Utils.join(gitletDir, "branches.new");
+            Utils.writeObject(temp, branches);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** The next SIZE bytes of a stream, read without closing it. */
+    private static class Limited extends FilterInputStream {
+        private long left;
+
+        Limited(InputStream in, long size) {
+            super(in);
+            left = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (left <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                left--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (left <= 0) {
+                return -1;
+            }
+            int n = in.read(buf, off, (int) Math.min(len, left));
+            if (n > 0) {
+                left -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** Skips whatever has not been read. */
+        void skipRest() throws IOException {
+            while (left > 0) {
+                long n = in.skip(left);
+                if (n <= 0) {
+                    if (in.read() < 0) {
+                        throw new EOFException();
+                    }
+                    n = 1;
+                }
+                left -= n;
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** The files tracked by a commit: a map from file name to blob id, kept
+ *  sorted and packed into three arrays.
+ *
+ *  Names are ordered by their UTF-8 bytes.  Each is stored as the number
+ *  of leading bytes it shares with the name before it and the bytes that
+ *  follow, both lengths as varints; every RESTART_INTERVAL-th name is
+ *  stored whole, and its offset kept in restarts.  The blob ids are
+ *  packed one after another, idLength bytes each, in the same order.
+ *  A lookup binary searches the restarts and then decodes at most one
+ *  run of names into a single buffer, so however many files a commit
+ *  tracks it holds no object per file.
+ *
+ *  Trees are never changed; with returns a new one.
+ */
+class Tree implements Serializable {
+
+    /** Number of names between names stored whole. */
+    static final int RESTART_INTERVAL = 16;
+
+    private final int size;
+    private final byte[] names;
+    private final int[] restarts;
+    private final byte[] ids;
+    /** Length in bytes of each blob id. */
+    private final int idLength;
+    /** Length in bytes of the longest name. */
+    private final int longest;
+
+    private Tree(int size, byte[] names, int[] restarts, byte[] ids, int idLength,
+                 int longest) {
+        this.size = size;
+        this.names = names;
+        this.restarts = restarts;
+        this.ids = ids;
+        this.idLength = idLength;
+        this.longest = longest;
+    }
+
+    /** Returns a tree tracking no files. */
+    static Tree empty() {
+        return new Builder().build();
+    }
+
+    /** Returns the number of files. */
+    int size() {
+        return size;
+    }
+
+    /** Returns the index of FILENAME in name order, or -1 if it is not
+     *  tracked. */
+    int indexOf(String filename) {
+        byte[] key = filename.getBytes(StandardCharsets.UTF_8);
+        if (key.length > longest) {
+            return -1;
+        }
+        Cursor cursor = new Cursor();
+        int lo = 0;
+        int hi = restarts.length - 1;
+        int block = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            cursor.seek(mid);
+            cursor.next();
+            int cmp = cursor.compareTo(key);
+            if (cmp == 0) {
+                return cursor.index;
+            } else if (cmp < 0) {
+                block = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (block < 0) {
+            return -1;
+        }
+        cursor.seek(block);
+        cursor.next();
+        for (int i = 1; i < RESTART_INTERVAL && cursor.next(); i++) {
+            int cmp = cursor.compareTo(key);
+            if (cmp == 0) {
+                return cursor.index;
+            } else if (cmp > 0) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns true iff FILENAME is tracked. */
+    boolean contains(String filename) {
+        return indexOf(filename) >= 0;
+    }
+
+    /** Returns the blob id of FILENAME, in hexadecimal, or null if it is
+     *  not tracked. */
+    String get(String filename) {
+        int index = indexOf(filename);
+        return index < 0 ? null : idAt(index);
+    }
+
+    /** Returns the blob id of the file at INDEX, in hexadecimal. */
+    String idAt(int index) {
+        char[] digits = new char[2 * idLength];
+        int start = index * idLength;
+        for (int i = 0; i < idLength; i++) {
+            ObjectId.formatHex(ids[start + i], digits, 2 * i, 2);
+        }
+        return new String(digits);
+    }
+
+    /** Returns the file names, in order. */
+    List<String> names() {
+        List<String> result = new ArrayList<>(size);
+        for (Cursor cursor = new Cursor(); cursor.next(); ) {
+            result.add(cursor.name());
+        }
+        return result;
+    }
+
+    /** Returns the blob ids, in hexadecimal, in the order of their names. */
+    List<String> blobIds() {
+        List<String> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(idAt(i));
+        }
+        return result;
+    }
+
+    /** Returns a new map from each file name to its blob id. */
+    HashMap<String, String> toMap() {
+        HashMap<String, String> result = new HashMap<>(size * 4 / 3 + 1);
+        for (Cursor cursor = new Cursor(); cursor.next(); ) {
+            result.put(cursor.name(), idAt(cursor.index));
+        }
+        return result;
+    }
+
+    /** Returns this tree with the files in ADDED, a map from file name to
+     *  blob id, put in, and then those in REMOVED taken out.  Only the
+     *  changed names are sorted; the rest are copied across in order. */
+    Tree with(Map<String, String> added, Set<String> removed) {
+        List<byte[]> changes = new ArrayList<>(added.size() + removed.size());
+        for (String filename : added.keySet()) {
+            if (!removed.contains(filename)) {
+                changes.add(filename.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        for (String filename : removed) {
+            changes.add(filename.getBytes(StandardCharsets.UTF_8));
+        }
+        changes.sort(Arrays::compareUnsigned);
+
+        Builder result = new Builder();
+        Cursor cursor = new Cursor();
+        boolean more = cursor.next();
+        for (byte[] change : changes) {
+            int cmp = -1;
+            while (more && (cmp = cursor.compareTo(change)) < 0) {
+                result.add(cursor.name, cursor.length, ids, cursor.index * idLength, idLength);
+                more = cursor.next();
+            }
+            if (more && cmp == 0) {
+                more = cursor.next();
+            }
+            String filename = new String(change, StandardCharsets.UTF_8);
+            if (!removed.contains(filename)) {
+                result.add(change, change.length, ObjectId.fromHex(added.get(filename)));
+            }
+        }
+        for (; more; more = cursor.next()) {
+            result.add(cursor.name, cursor.length, ids, cursor.index * idLength, idLength);
+        }
+        return result.build();
+    }
+
+    /** A position in the names of this tree, holding the name last
+     *  decoded. */
+    private class Cursor {
+        /** The index of the current name, or -1 before the first. */
+        private int index = -1;
+        /** Offset in names of the next name. */
+        private int pos;
+        private final byte[] name = new byte[longest];
+        private int length;
+
+        /** Moves to just before the first name of run BLOCK. */
+        void seek(int block) {
+            index = block * RESTART_INTERVAL - 1;
+            pos = restarts[block];
+            length = 0;
+        }
+
+        /** Decodes the next name, returning false if there is none. */
+        boolean next() {
+            if (index + 1 >= size) {
+                return false;
+            }
+            int shared = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = names[pos++];
+                shared |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            int suffix = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = names[pos++];
+                suffix |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            System.arraycopy(names, pos, name, shared, suffix);
+            pos += suffix;
+            length = shared + suffix;
+            index++;
+            return true;
+        }
+
+        /** Compares the current name with KEY, as unsigned bytes. */
+        int compareTo(byte[] key) {
+            return Arrays.compareUnsigned(name, 0, length, key, 0, key.length);
+        }
+
+        String name() {
+            return new String(name, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Builds a tree from names given in increasing order. */
+    static class Builder {
+        private int size;
+        private byte[] names = new byte[256];
+        private int namesLength;
+        private int[] restarts = new int[4];
+        private byte[] ids = new byte[16 * ObjectId.WIDE_LENGTH];
+        private int idLength;
+        private byte[] last = new byte[64];
+        private int lastLength;
+        private int longest;
+
+        /** Adds file FILENAME with blob ID. */
+        void add(String filename, ObjectId id) {
+            byte[] name = filename.getBytes(StandardCharsets.UTF_8);
+            add(name, name.length, id);
+        }
+
+        /** Adds the file named by NAME[0 .. LENGTH-1] with blob ID. */
+        void add(byte[] name, int length, ObjectId id) {
+            addName(name, length, id.length());
+            id.copyTo(ids, (size - 1) * idLength);
+        }
+
+        /** Adds the file named by NAME[0 .. LENGTH-1] whose blob id is
+         *  IDS[OFFSET .. OFFSET+IDLENGTH-1]. */
+        void add(byte[] name, int length, byte[] ids, int offset, int idLength) {
+            addName(name, length, idLength);
+            System.arraycopy(ids, offset, this.ids, (size - 1) * idLength, idLength);
+        }
+
+        /** Adds NAME[0 .. LENGTH-1], to be followed by an id of IDLENGTH
+         *  bytes. */
+        private void addName(byte[] name, int length, int idLength) {
+            if (size == 0) {
+                this.idLength = idLength;
+            } else if (idLength != this.idLength) {
+                throw new IllegalArgumentException("tree ids of different lengths");
+            }
+            if (size > 0 && Arrays.compareUnsigned(last, 0, lastLength, name, 0, length) >= 0) {
+                throw new IllegalArgumentException("tree names out of order");
+            }
+            int shared = 0;
+            if (size % RESTART_INTERVAL == 0) {
+                if (size / RESTART_INTERVAL == restarts.length) {
+                    restarts = Arrays.copyOf(restarts, 2 * restarts.length);
+                }
+                restarts[size / RESTART_INTERVAL] = namesLength;
+            } else {
+                int limit = Math.min(lastLength, length);
+                while (shared < limit && last[shared] == name[shared]) {
+                    shared++;
+                }
+            }
+            int suffix = length - shared;
+            if (namesLength + suffix + 10 > names.length) {
+                names = Arrays.copyOf(names, Math.max(2 * names.length, namesLength + suffix + 10));
+            }
+            writeVarint(shared);
+            writeVarint(suffix);
+            System.arraycopy(name, shared, names, namesLength, suffix);
+            namesLength += suffix;
+
+            if (length > last.length) {
+                last = Arrays.copyOf(last, Math.max(2 * last.length, length));
+            }
+            System.arraycopy(name, shared, last, shared, suffix);
+            lastLength = length;
+            longest = Math.max(longest, length);
+            size++;
+            if (size * idLength > ids.length) {
+                ids = Arrays.copyOf(ids, 2 * ids.length);
+            }
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7f) != 0) {
+                names[namesLength++] = (byte) (value | 0x80);
+                value >>>= 7;
+            }
+            names[namesLength++] = (byte) value;
+        }
+
+        /** Returns the tree built. */
+        Tree build() {
+            int blocks = (size + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+            return new Tree(size, Arrays.copyOf(names, namesLength),
+                    Arrays.copyOf(restarts, blocks),
+                    Arrays.copyOf(ids, size * idLength), idLength, longest);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+
+/** A stage kept in memory: the changes to one commit's files that will
+ *  make up a new commit on top of it.
+ *
+ *  Merges, cherry-picks and rebases build their commits here and write
+ *  them straight to the object store, so a long series of them touches
+ *  neither the stage on disk nor the working tree; those are brought up
+ *  to date once, when the series is done.
+ */
+class TreeBuilder {
+
+    private final BlobStore blobs;
+    private final File commitDir;
+    private final String parent;
+    private final HashMap<String, String> added = new HashMap<>();
+    private final HashMap<String, String> removed = new HashMap<>();
+
+    /** A tree starting out with the files of commit PARENT, whose blobs
+     *  are in BLOBS, and whose commits are written to COMMITDIR. */
+    TreeBuilder(BlobStore blobs, File commitDir, String parent) {
+        this.blobs = blobs;
+        this.commitDir = commitDir;
+        this.parent = parent;
+    }
+
+    /** Applies the actions of PLAN: files taken from the other side,
+     *  removed, or merged cleanly.  Conflicted files keep the parent's
+     *  version, under the new name if the other side renamed them. */
+    void apply(MergePlan plan) {
+        for (MergePlan.Action action : plan.actions()) {
+            switch (action.kind) {
+                case MergePlan.TAKE:
+                case MergePlan.MERGED:
+                    put(action.filename, action.blobId);
+                    break;
+                case MergePlan.REMOVE:
+                    remove(action.filename, action.currentId);
+                    break;
+                default:
+                    if (action.currentId != null) {
+                        put(action.filename, action.currentId);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /** Sets FILENAME to blob BLOBID. */
+    void put(String filename, String blobId) {
+        removed.remove(filename);
+        added.put(filename, blobId);
+    }
+
+    /** Removes FILENAME, which was blob BLOBID in the parent. */
+    void remove(String filename, String blobId) {
+        added.remove(filename);
+        removed.put(filename, blobId);
+    }
+
+    /** Returns true iff no file has been changed. */
+    boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+
+    /** Writes the tree as a commit with MESSAGE, the parent, and the
+     *  second parent SECONDPARENT if not null.  Returns its id. */
+    String commit(String message, String secondParent) {
+        Commit commit = new Commit(message, parent, added, removed, secondParent,
+                blobs.algorithm());
+        Utils.writeObject(Utils.join(commitDir, commit.getHash()), commit);
+        return commit.getHash();
+    }
+}
@@ -0,0 +1,286 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** The differences between two trees, each a map from file name to blob id.
+ *
+ *  Files whose blob ids match are skipped without being read.  The rest
+ *  are diffed line by line, in parallel when there are many of them, and
+ *  reported in file-name order either as a unified diff or as a summary
+ *  of lines added and removed per file.
+ */
+class TreeDiff {
+
+    /** Lines of unchanged context shown around each change. */
+    static final int CONTEXT = 3;
+    /** Fewest changed files worth diffing in parallel. */
+    static final int PARALLEL_THRESHOLD = 16;
+    /** Widest +/- graph drawn by stat. */
+    static final int STAT_WIDTH = 40;
+
+    private final BlobStore blobs;
+    private final File workTree;
+    private final List<FileDiff> files = new ArrayList<>();
+
+    /** The differences from OLDTREE to NEWTREE, whose blobs are in BLOBS.
+     *  If WORKTREE is not null, the contents of NEWTREE are read from the
+     *  files there instead of from BLOBS. */
+    TreeDiff(BlobStore blobs, Map<String, String> oldTree, Map<String, String> newTree,
+             File workTree) {
+        this(blobs, oldTree, newTree, workTree, null);
+    }
+
+    /** As above, but if RENAMES is not null, uses it to report files that
+     *  were renamed as such, rather than as a deletion and an addition,
+     *  and new files copied from kept ones as copies. */
+    TreeDiff(BlobStore blobs, Map<String, String> oldTree, Map<String, String> newTree,
+             File workTree, RenameDetector renames) {
+        this.blobs = blobs;
+        this.workTree = workTree;
+        Map<String, RenameDetector.Rename> renamed = new HashMap<>();
+        Set<String> renamedFrom = new HashSet<>();
+        if (renames != null) {
+            HashMap<String, String> deleted = new HashMap<>();
+            HashMap<String, String> added = new HashMap<>();
+            for (Map.Entry<String, String> entry : oldTree.entrySet()) {
+                if (!newTree.containsKey(entry.getKey())) {
+                    deleted.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (Map.Entry<String, String> entry : newTree.entrySet()) {
+                if (!oldTree.containsKey(entry.getKey())) {
+                    added.put(entry.getKey(), entry.getValue());
+                }
+            }
+            renamed = new HashMap<>(renames.detect(deleted, added));
+            for (RenameDetector.Rename rename : renamed.values()) {
+                renamedFrom.add(rename.oldName);
+                added.remove(rename.newName);
+            }
+            if (!added.isEmpty()) {
+                HashMap<String, String> kept = new HashMap<>();
+                Set<String> changed = new HashSet<>();
+                for (Map.Entry<String, String> entry : oldTree.entrySet()) {
+                    String newId = newTree.get(entry.getKey());
+                    if (newId != null) {
+                        kept.put(entry.getKey(), entry.getValue());
+                        if (!newId.equals(entry.getValue())) {
+                            changed.add(entry.getKey());
+                        }
+                    }
+                }
+                renamed.putAll(renames.detectCopies(kept, changed, added));
+            }
+        }
+        TreeSet<String> names = new TreeSet<>(oldTree.keySet());
+        names.addAll(newTree.keySet());
+        for (String name : names) {
+            String oldId = oldTree.get(name);
+            String newId = newTree.get(name);
+            RenameDetector.Rename rename = renamed.get(name);
+            if (rename != null) {
+                FileDiff file = new FileDiff(rename.oldName, oldTree.get(rename.oldName), name, newId);
+                file.similarity = rename.similarity;
+                file.copy = rename.copy;
+                files.add(file);
+            } else if (!renamedFrom.contains(name) && !Objects.equals(oldId, newId)) {
+                files.add(new FileDiff(name, oldId, name, newId));
+            }
+        }
+        if (files.size() >= PARALLEL_THRESHOLD) {
+            files.parallelStream().forEach(FileDiff::compute);
+        } else {
+            files.forEach(FileDiff::compute);
+        }
+    }
+
+    /** Returns true iff the two trees have the same contents. */
+    boolean isEmpty() {
+        return files.isEmpty();
+    }
+
+    /** Writes the differences to OUT as a unified diff. */
+    void writeUnified(OutputStream out) throws IOException {
+        for (FileDiff file : files) {
+            out.write(file.unified);
+        }
+    }
+
+    /** Writes a summary of the differences to OUT: a line per file with
+     *  its number of changed lines, then the totals. */
+    void writeStat(OutputStream out) throws IOException {
+        int nameWidth = 0;
+        int widest = 0;
+        for (FileDiff file : files) {
+            nameWidth = Math.max(nameWidth, file.displayName().length());
+            widest = Math.max(widest, file.insertions + file.deletions);
+        }
+        int insertions = 0;
+        int deletions = 0;
+        StringBuilder text = new StringBuilder();
+        for (FileDiff file : files) {
+            insertions += file.insertions;
+            deletions += file.deletions;
+            text.append(String.format(" %-" + nameWidth + "s | ", file.displayName()));
+            if (file.binary) {
+                text.append("Bin\n");
+                continue;
+            }
+            int plus = file.insertions;
+            int minus = file.deletions;
+            if (widest > STAT_WIDTH) {
+                plus = (int) Math.ceil((double) plus * STAT_WIDTH / widest);
+                minus = (int) Math.ceil((double) minus * STAT_WIDTH / widest);
+            }
+            text.append(file.insertions + file.deletions).append(' ')
+                    .append("+".repeat(plus)).append("-".repeat(minus)).append('\n');
+        }
+        text.append(String.format(" %d file%s changed, %d insertion%s(+), %d deletion%s(-)%n",
+                files.size(), files.size() == 1 ? "" : "s",
+                insertions, insertions == 1 ? "" : "s",
+                deletions, deletions == 1 ? "" : "s"));
+        out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the lines of blob ID, or of the working-tree copy of NAME if
+     *  this diff reads its new side from a working tree and NEWSIDE. */
+    private Lines load(String name, String id, boolean newSide) {
+        if (id == null) {
+            return Lines.empty();
+        }
+        try (InputStream in = newSide && workTree != null
+                ? new FileInputStream(Utils.join(workTree, name)) : blobs.open(id)) {
+            return Lines.read(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** The changes to one file. */
+    private class FileDiff {
+        private final String oldName;
+        private final String oldId;
+        private final String newName;
+        private final String newId;
+        private byte[] unified;
+        private int insertions;
+        private int deletions;
+        private boolean binary;
+        private int similarity;
+        private boolean copy;
+
+        FileDiff(String oldName, String oldId, String newName, String newId) {
+            this.oldName = oldName;
+            this.oldId = oldId;
+            this.newName = newName;
+            this.newId = newId;
+        }
+
+        String displayName() {
+            return oldName.equals(newName) ? newName : oldName + " => " + newName;
+        }
+
+        void compute() {
+            Lines before = load(oldName, oldId, false);
+            Lines after = load(newName, newId, true);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                text(out, "diff --git a/" + oldName + " b/" + newName + "\n");
+                if (!oldName.equals(newName)) {
+                    text(out, "similarity index " + similarity + "%\n");
+                    String how = copy ? "copy" : "rename";
+                    text(out, how + " from " + oldName + "\n" + how + " to " + newName + "\n");
+                } else if (oldId == null) {
+                    text(out, "new file\n");
+                } else if (newId == null) {
+                    text(out, "deleted file\n");
+                }
+                binary = before.isBinary() || after.isBinary();
+                if (binary) {
+                    text(out, "Binary files " + (oldId == null ? "/dev/null" : "a/" + oldName)
+                            + " and " + (newId == null ? "/dev/null" : "b/" + newName) + " differ\n");
+                } else {
+                    List<Diff.Hunk> hunks = Diff.compute(before, after);
+                    if (!hunks.isEmpty()) {
+                        text(out, "--- " + (oldId == null ? "/dev/null" : "a/" + oldName) + "\n");
+                        text(out, "+++ " + (newId == null ? "/dev/null" : "b/" + newName) + "\n");
+                        writeHunks(out, before, after, hunks);
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+            unified = out.toByteArray();
+        }
+
+        /** Writes HUNKS, grouped with their context, in unified format. */
+        private void writeHunks(OutputStream out, Lines before, Lines after,
+                                List<Diff.Hunk> hunks) throws IOException {
+            int first = 0;
+            while (first < hunks.size()) {
+                int last = first;
+                while (last + 1 < hunks.size()
+                        && hunks.get(last + 1).aStart - hunks.get(last).aEnd <= 2 * CONTEXT) {
+                    last++;
+                }
+                Diff.Hunk start = hunks.get(first);
+                Diff.Hunk end = hunks.get(last);
+                int aFrom = Math.max(0, start.aStart - CONTEXT);
+                int bFrom = start.bStart - (start.aStart - aFrom);
+                int aTo = Math.min(before.size(), end.aEnd + CONTEXT);
+                int bTo = end.bEnd + (aTo - end.aEnd);
+                text(out, "@@ -" + range(aFrom, aTo) + " +" + range(bFrom, bTo) + " @@\n");
+                int a = aFrom;
+                for (int h = first; h <= last; h++) {
+                    Diff.Hunk hunk = hunks.get(h);
+                    writeLines(out, ' ', before, a, hunk.aStart);
+                    writeLines(out, '-', before, hunk.aStart, hunk.aEnd);
+                    writeLines(out, '+', after, hunk.bStart, hunk.bEnd);
+                    deletions += hunk.aEnd - hunk.aStart;
+                    insertions += hunk.bEnd - hunk.bStart;
+                    a = hunk.aEnd;
+                }
+                writeLines(out, ' ', before, a, aTo);
+                first = last + 1;
+            }
+        }
+
+        private void writeLines(OutputStream out, char prefix, Lines lines,
+                                int from, int to) throws IOException {
+            for (int i = from; i < to; i++) {
+                out.write(prefix);
+                lines.write(out, i, i + 1);
+                if (!lines.endsWithNewline(i)) {
+                    text(out, "\n\\ No newline at end of file\n");
+                }
+            }
+        }
+    }
+
+    /** Returns the unified-diff range header for lines [FROM, TO). */
+    private static String range(int from, int to) {
+        int length = to - from;
+        if (length == 0) {
+            return from + ",0";
+        }
+        return length == 1 ? String.valueOf(from + 1) : (from + 1) + "," + length;
+    }
+
+    private static void text(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
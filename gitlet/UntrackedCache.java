@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** Remembers what each working-tree directory held when gitlet last
+ *  listed it, kept in .gitlet/untracked-cache.
+ *
+ *  Adding, removing or renaming an entry of a directory changes the
+ *  directory's modification time, so while that time is what it was when
+ *  a directory was listed, the files and subdirectories recorded for it
+ *  are still its entries.  Finding every file in the working tree then
+ *  takes one stat per directory, and only directories that changed are
+ *  read again.  As in StatCache, a listing made within RACY_MILLIS of
+ *  the directory's modification time is never trusted.  Listings hold
+ *  every entry; ignored files are left out, and ignored directories not
+ *  entered, as the tree is walked.
+ *
+ *  The cache only enumerates files, for "add .".  Checks of whether a
+ *  command would overwrite an untracked file stat that one path instead:
+ *  they must see ignored files too, and files written since the walk.
+ */
+class UntrackedCache implements Serializable {
+
+    /** Coarsest file-system timestamp resolution we allow for. */
+    static final long RACY_MILLIS = StatCache.RACY_MILLIS;
+
+    private final HashMap<String, Listing> listings = new HashMap<>();
+
+    private transient File workTree;
+    private transient File gitletDir;
+    private transient IgnoreRules ignore;
+    private transient Set<String> all;
+    /** The directories the last walk found. */
+    private transient Set<String> visited;
+    private transient boolean dirty;
+
+    /** Returns the untracked cache of the repository in GITLETDIR, whose
+     *  working tree is its parent directory, skipping the files IGNORE
+     *  ignores. */
+    static UntrackedCache load(File gitletDir, IgnoreRules ignore) {
+        File file = Utils.join(gitletDir, "untracked-cache");
+        UntrackedCache cache = file.isFile()
+                ? Utils.readObject(file, UntrackedCache.class) : new UntrackedCache();
+        cache.gitletDir = gitletDir;
+        cache.workTree = gitletDir.getParentFile();
+        cache.ignore = ignore;
+        return cache;
+    }
+
+    /** Writes this cache back to its repository if it has changed. */
+    void save() {
+        if (dirty) {
+            Utils.writeObject(Utils.join(gitletDir, "untracked-cache"), this);
+            dirty = false;
+        }
+    }
+
+    /** Returns the paths of every file in the working tree, relative to
+     *  it, leaving out the repository itself and ignored files.  The
+     *  result is computed once per cache and must not be changed. */
+    Set<String> files() {
+        if (all == null) {
+            all = files("");
+            if (listings.keySet().retainAll(visited)) {
+                dirty = true;
+            }
+        }
+        return all;
+    }
+
+    /** Returns the paths of the files under DIR, a directory given
+     *  relative to the working tree, "" being the working tree itself,
+     *  that are not ignored. */
+    Set<String> files(String dir) {
+        visited = new HashSet<>();
+        Set<String> result = new TreeSet<>();
+        if (!dir.isEmpty() && ignore.ignored(dir, true)) {
+            return result;
+        }
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(dir);
+        while (!pending.isEmpty()) {
+            String path = pending.pop();
+            Listing listing = list(path);
+            if (listing == null) {
+                continue;
+            }
+            visited.add(path);
+            String prefix = path.isEmpty() ? "" : path + "/";
+            for (String name : listing.files) {
+                if (!ignore.ignored(prefix + name, false)) {
+                    result.add(prefix + name);
+                }
+            }
+            for (String name : listing.dirs) {
+                if (!ignore.ignored(prefix + name, true)) {
+                    pending.push(prefix + name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the entries of directory PATH, listing it again only if it
+     *  has changed, or null if it is not a directory. */
+    private Listing list(String path) {
+        File dir = path.isEmpty() ? workTree : Utils.join(workTree, path);
+        long modified = dir.lastModified();
+        Listing listing = listings.get(path);
+        if (listing != null && listing.modified == modified
+                && listing.recorded - modified >= RACY_MILLIS) {
+            return listing;
+        }
+        File[] children = dir.listFiles();
+        if (children == null) {
+            if (listings.remove(path) != null) {
+                dirty = true;
+            }
+            return null;
+        }
+        listing = new Listing(modified);
+        for (File child : children) {
+            String name = child.getName();
+            if (path.isEmpty() && name.equals(".gitlet")) {
+                continue;
+            } else if (child.isDirectory()) {
+                listing.dirs.add(name);
+            } else if (child.isFile()) {
+                listing.files.add(name);
+            }
+        }
+        listings.put(path, listing);
+        dirty = true;
+        return listing;
+    }
+
+    /** The entries of one directory when it was last listed. */
+    private static class Listing implements Serializable {
+        private final long modified;
+        private final long recorded;
+        private final ArrayList<String> files = new ArrayList<>();
+        private final ArrayList<String> dirs = new ArrayList<>();
+
+        Listing(long modified) {
+            this.modified = modified;
+            this.recorded = System.currentTimeMillis();
+        }
+    }
+}
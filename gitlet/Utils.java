@@ -1,22 +1,23 @@
 package gitlet;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 
 /** Assorted utilities.
@@ -37,6 +38,9 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** The hexadecimal digits, indexed by value. */
+    static final String HEX_DIGITS = "0123456789abcdef";
+
     /* CUSTOM UTILS METHODS */
     static Commit getCommit(String hash) {
         if (hash == null) {
@@ -45,32 +49,61 @@ class Utils {
         return Utils.readObject(Utils.join(COMMIT_DIR, hash), Commit.class);
     }
 
+    /** Returns commit HASH of the repository whose .gitlet directory is
+     *  GITLETDIR. */
+    static Commit getCommit(File gitletDir, String hash) {
+        return Utils.readObject(Utils.join(gitletDir, "commits", hash), Commit.class);
+    }
+
+    /** Returns the commits of the repository whose .gitlet directory is
+     *  GITLETDIR whose parents a shallow clone left out, listed in
+     *  GITLETDIR/shallow.  History walks treat them as roots. */
+    static Set<String> shallowCommits(File gitletDir) {
+        File file = join(gitletDir, "shallow");
+        return file.isFile() ? readObject(file, HashSet.class) : new HashSet<>();
+    }
+
     /* SHA-1 HASH VALUES. */
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        return toHex(sha1Digest(vals));
+    }
+
+    private static byte[] sha1Digest(Object... vals) {
+        MessageDigest md = newSha1();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            return result.toString();
+        }
+        return md.digest();
+    }
+
+    /** Returns a new SHA-1 MessageDigest. */
+    static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns BYTES as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] bytes) {
+        char[] digits = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            digits[2 * i] = HEX_DIGITS.charAt((bytes[i] >> 4) & 0xf);
+            digits[2 * i + 1] = HEX_DIGITS.charAt(bytes[i] & 0xf);
+        }
+        return new String(digits);
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -131,13 +164,11 @@ class Utils {
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
-        try {
-            if (file.isDirectory()) {
-                throw
-                        new IllegalArgumentException("cannot overwrite directory");
-            }
-            BufferedOutputStream str =
-                    new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+        if (file.isDirectory()) {
+            throw
+                    new IllegalArgumentException("cannot overwrite directory");
+        }
+        try (OutputStream str = new FileOutputStream(file)) {
             for (Object obj : contents) {
                 if (obj instanceof byte[]) {
                     str.write((byte[]) obj);
@@ -145,7 +176,6 @@ class Utils {
                     str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
                 }
             }
-            str.close();
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp);
         }
@@ -209,14 +239,26 @@ class Utils {
      *  analogous to the {@link java.nio.file.Paths get(String, String[])}
      *  method. */
     static File join(String first, String... others) {
-        return Paths.get(first, others).toFile();
+        if (others.length == 1 && !first.isEmpty()) {
+            return new File(first, others[0]);
+        }
+        StringBuilder path = new StringBuilder(first);
+        for (String other : others) {
+            if (other.isEmpty()) {
+                continue;
+            } else if (path.length() > 0) {
+                path.append(File.separatorChar);
+            }
+            path.append(other);
+        }
+        return new File(path.toString());
     }
 
     /** Return the concatenation of FIRST and OTHERS into a File designator,
      *  analogous to the {@link java.nio.file.Paths get(String, String[])}
      *  method. */
     static File join(File first, String... others) {
-        return Paths.get(first.getPath(), others).toFile();
+        return join(first.getPath(), others);
     }
 
 